@@ -0,0 +1,322 @@
+package automail;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+
+import exceptions.ItemTooHeavyException;
+import strategies.Automail;
+
+/**
+ * Replays recorded arrivals, such as the mailroom scanner's, in place of generated mail.
+ * The log is a binary file of fixed size records, read through a memory mapped window that
+ * moves along the file as the simulation does: only the items arriving in a time step are
+ * ever turned into objects, so any length of log is replayed in the same memory.
+ *
+ * The file starts with MAGIC, VERSION and the number of records as a long; each record is
+ * then the arrival time, the destination floor, the weight and the priority level (0 for
+ * ordinary mail) as ints, in order of arrival. An item's number is its record's index.
+ * {@link #main} converts CSV scanner logs and generated mail into this form.
+ */
+public class ArrivalLog implements MailSource {
+
+	static final int MAGIC = 0x414D414C; // "AMAL"
+	static final int VERSION = 1;
+	private static final int HEADER_SIZE = 16;
+	private static final int RECORD_SIZE = 16;
+	/** The records mapped at once, 64 MB of the file */
+	private static final int WINDOW_RECORDS = 1 << 22;
+	/** The highest priority level, as snapshots keep it in a byte */
+	private static final int MAX_PRIORITY = 255;
+
+	private final String file;
+	private final int count;
+	private final int mailMaxWeight;
+	private final Building building;
+	private final Clock clock;
+	private final EventLog log;
+	private Automail automail;
+
+	private MappedByteBuffer window;
+	private int windowStart;
+	private int windowEnd;
+	/** The index of the next record to arrive */
+	private int next;
+	private int arrivals;
+
+	/**
+	 * Usage: ArrivalLog import scanner.csv file | ArrivalLog export file [seed]
+	 *
+	 * import converts CSV lines of arrival time, floor, weight and priority, in order of
+	 * arrival, checking the floors and weights against automail.properties' Floors and
+	 * Mail_Max_Weight; export
+	 * writes the mail the generator makes for automail.properties.
+	 */
+	public static void main(String[] args) throws IOException {
+		Configuration config = Configuration.load("automail.properties");
+		if (args.length == 3 && args[0].equals("import")) {
+			int records = 0;
+			try (BufferedReader in = Files.newBufferedReader(Paths.get(args[1]), StandardCharsets.UTF_8);
+					Writer out = new Writer(args[2], config.floors, config.mailMaxWeight)) {
+				String line;
+				while ((line = in.readLine()) != null) {
+					String[] fields = line.trim().split("\\s*,\\s*");
+					if (fields.length < 4 || !fields[0].matches("-?[0-9]+")) {
+						continue; // the header, or a blank line; a negative time is rejected by add
+					}
+					out.add(Integer.parseInt(fields[0]), Integer.parseInt(fields[1]), Integer.parseInt(fields[2]),
+							Integer.parseInt(fields[3]));
+					records++;
+				}
+			} catch (IllegalArgumentException e) {
+				Files.deleteIfExists(Paths.get(args[2])); // rather than leave half a log
+				throw e;
+			}
+			System.out.printf("Wrote %d arrivals to %s%n", records, args[2]);
+		} else if ((args.length == 2 || args.length == 3) && args[0].equals("export")) {
+			if (args.length == 3) {
+				config.seed = Integer.parseInt(args[2]);
+			}
+			HashMap<Boolean, Integer> seedMap = new HashMap<>();
+			seedMap.put(config.seed != null, config.seed == null ? 0 : config.seed);
+			Building building = new Building(config.floors, config.mailroomFloors);
+			Clock clock = new Clock(config.lastDeliveryTime);
+			MailGenerator generator = new MailGenerator(config.mailToCreate, config.mailMaxWeight, building, clock,
+					null, null, seedMap);
+			generator.generateAllMail();
+			try (Writer out = new Writer(args[1], config.floors, config.mailMaxWeight)) {
+				for (MailItem mailItem : generator.getAllMail()) {
+					int priority_level = mailItem instanceof PriorityMailItem
+							? ((PriorityMailItem) mailItem).getPriorityLevel() : 0;
+					out.add(mailItem.getArrivalTime(), mailItem.getDestFloor(), mailItem.getWeight(), priority_level);
+				}
+			}
+			System.out.printf("Wrote %d arrivals to %s%n", generator.MAIL_TO_CREATE, args[1]);
+		} else {
+			System.out.println("Usage: ArrivalLog import scanner.csv file | ArrivalLog export file [seed]");
+		}
+	}
+
+	/**
+	 * @param file the arrival log to replay from the start
+	 * @param mailMaxWeight the heaviest item that may arrive
+	 */
+	public ArrivalLog(String file, int mailMaxWeight, Building building, Clock clock, EventLog log,
+			Automail automail) throws IOException {
+		this(file, 0, mailMaxWeight, building, clock, log, automail);
+	}
+
+	/**
+	 * Constructor for an arrival log resumed from a snapshot, see {@link #writeState}
+	 */
+	ArrivalLog(DataInput in, int mailMaxWeight, Building building, Clock clock, EventLog log, Automail automail)
+			throws IOException {
+		this(in.readUTF(), in.readInt(), mailMaxWeight, building, clock, log, automail);
+	}
+
+	private ArrivalLog(String file, int next, int mailMaxWeight, Building building, Clock clock, EventLog log,
+			Automail automail) throws IOException {
+		this.file = file;
+		this.next = next;
+		this.mailMaxWeight = mailMaxWeight;
+		this.building = building;
+		this.clock = clock;
+		this.log = log;
+		this.automail = automail;
+		try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			while (header.hasRemaining() && channel.read(header) >= 0) {
+			}
+			header.flip();
+			if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC || header.getInt() != VERSION) {
+				throw new IOException(file + " is not an arrival log");
+			}
+			long records = header.getLong();
+			if (records > Integer.MAX_VALUE || HEADER_SIZE + records * RECORD_SIZE > channel.size()) {
+				throw new IOException(file + " is truncated or has too many records");
+			}
+			count = (int) records;
+		}
+	}
+
+	/**
+	 * Maps the window of records starting at the given one
+	 */
+	private void map(int start) throws IOException {
+		windowStart = start;
+		windowEnd = (int) Math.min((long) start + WINDOW_RECORDS, count);
+		// the mapping stays valid once the channel is closed
+		try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+			window = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + (long) start * RECORD_SIZE,
+					(long) (windowEnd - start) * RECORD_SIZE);
+		}
+	}
+
+	@Override
+	public PriorityMailItem step() throws ItemTooHeavyException {
+		PriorityMailItem priority = null;
+		arrivals = 0;
+		int now = clock.Time();
+		while (next < count) {
+			if (window == null || next >= windowEnd || next < windowStart) {
+				try {
+					map(next);
+				} catch (IOException e) {
+					throw new IllegalStateException("Cannot read " + file, e);
+				}
+			}
+			int offset = (next - windowStart) * RECORD_SIZE;
+			int arrival_time = window.getInt(offset);
+			if (arrival_time > now) {
+				break;
+			}
+			int dest_floor = window.getInt(offset + 4);
+			int weight = window.getInt(offset + 8);
+			int priority_level = window.getInt(offset + 12);
+			checkItem(next, file, arrival_time, dest_floor, weight, priority_level, building.FLOORS, mailMaxWeight);
+			if (arrival_time < now) {
+				throw new IllegalStateException(file + " is out of time order at record " + next);
+			}
+			MailItem mailItem;
+			if (priority_level == 0) {
+				mailItem = new MailItem(next, dest_floor, arrival_time, weight);
+			} else {
+				priority = new PriorityMailItem(next, dest_floor, arrival_time, weight, priority_level);
+				mailItem = priority;
+			}
+			log.newArrival(mailItem);
+			automail.addToPool(mailItem);
+			next++;
+			arrivals++;
+		}
+		return priority;
+	}
+
+	/**
+	 * @throws IllegalArgumentException unless the item arrives at a time step, for a floor of
+	 *         the building, and can be carried and its priority saved
+	 */
+	private static void checkItem(long record, String file, int arrival_time, int dest_floor, int weight,
+			int priority_level, int floors, int mailMaxWeight) {
+		if (arrival_time < 0) {
+			throw new IllegalArgumentException("Record " + record + " of " + file + " arrives at " + arrival_time
+					+ ", before the first time step");
+		}
+		if (dest_floor < Building.LOWEST_FLOOR || dest_floor >= Building.LOWEST_FLOOR + floors) {
+			throw new IllegalArgumentException("Record " + record + " of " + file + " is for floor " + dest_floor
+					+ ", outside the building's " + floors);
+		}
+		if (weight <= 0 || weight > mailMaxWeight) {
+			throw new IllegalArgumentException("Record " + record + " of " + file + " weighs " + weight
+					+ ", outside 1 to Mail_Max_Weight " + mailMaxWeight);
+		}
+		if (priority_level < 0 || priority_level > MAX_PRIORITY) {
+			throw new IllegalArgumentException("Record " + record + " of " + file + " has priority level "
+					+ priority_level + ", outside 0 to " + MAX_PRIORITY);
+		}
+	}
+
+	/**
+	 * Sends arrivals to another automail, once the simulation is reconfigured
+	 */
+	void setAutomail(Automail automail) {
+		this.automail = automail;
+	}
+
+	@Override
+	public int getArrivals() {
+		return arrivals;
+	}
+
+	@Override
+	public int getMailCount() {
+		return count;
+	}
+
+	@Override
+	public boolean isContinuous() {
+		return false;
+	}
+
+	/**
+	 * Saves the file name and the next record; the records themselves stay in the file
+	 */
+	@Override
+	public void writeState(DataOutput out) throws IOException {
+		out.writeUTF(file);
+		out.writeInt(next);
+	}
+
+	/**
+	 * Writes an arrival log record by record through a buffer, filling in the number of
+	 * records when closed
+	 */
+	static class Writer implements Closeable {
+
+		private final String file;
+		private final int floors;
+		private final int mailMaxWeight;
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+		private long records = 0;
+		private int lastTime = Integer.MIN_VALUE;
+
+		/**
+		 * @param floors the floors of the building the log is for
+		 * @param mailMaxWeight the heaviest item the log may hold
+		 */
+		Writer(String file, int floors, int mailMaxWeight) throws IOException {
+			this.file = file;
+			this.floors = floors;
+			this.mailMaxWeight = mailMaxWeight;
+			channel = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING);
+			buffer.putInt(MAGIC).putInt(VERSION).putLong(0);
+		}
+
+		void add(int arrival_time, int dest_floor, int weight, int priority_level) throws IOException {
+			checkItem(records, file, arrival_time, dest_floor, weight, priority_level, floors, mailMaxWeight);
+			if (arrival_time < lastTime) {
+				throw new IllegalArgumentException("Arrival " + records + " at " + arrival_time
+						+ " is before the one preceding it");
+			}
+			if (buffer.remaining() < RECORD_SIZE) {
+				flush();
+			}
+			buffer.putInt(arrival_time).putInt(dest_floor).putInt(weight).putInt(priority_level);
+			lastTime = arrival_time;
+			records++;
+		}
+
+		private void flush() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			buffer.clear();
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				flush();
+				ByteBuffer count = ByteBuffer.allocate(8).putLong(0, records);
+				while (count.hasRemaining()) {
+					channel.write(count, 8 + count.position());
+				}
+			} finally {
+				channel.close();
+			}
+		}
+	}
+}
@@ -1,15 +1,39 @@
-package automail;
-
-public class Building {
-	
-	
-    /** The number of floors in the building **/
-    public static int FLOORS;
-    
-    /** Represents the ground floor location */
-    public static final int LOWEST_FLOOR = 1;
-    
-    /** Represents the mailroom location */
-    public static final int MAILROOM_LOCATION = 1;
-
-}
+package automail;
+
+public class Building {
+	
+	
+    /** The number of floors in the building **/
+    public final int FLOORS;
+    
+    /** Represents the ground floor location */
+    public static final int LOWEST_FLOOR = 1;
+    
+    /** Represents the mailroom location */
+    public static final int MAILROOM_LOCATION = 1;
+
+    /** The floors of every mailroom in the building, each with its own pool and robots */
+    public final int[] MAILROOM_LOCATIONS;
+
+    public Building(int floors) {
+    	this(floors, new int[] { MAILROOM_LOCATION });
+    }
+
+    /**
+     * @param floors the number of floors in the building
+     * @param mailrooms the floor of each mailroom
+     */
+    public Building(int floors, int[] mailrooms) {
+    	if (mailrooms.length == 0) {
+    		throw new IllegalArgumentException("A building needs at least one mailroom");
+    	}
+    	for (int mailroom : mailrooms) {
+    		if (mailroom < LOWEST_FLOOR || mailroom >= LOWEST_FLOOR + floors) {
+    			throw new IllegalArgumentException("Mailroom floor " + mailroom + " is outside the building");
+    		}
+    	}
+    	this.FLOORS = floors;
+    	this.MAILROOM_LOCATIONS = mailrooms.clone();
+    }
+
+}
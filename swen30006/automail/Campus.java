@@ -0,0 +1,183 @@
+package automail;
+
+import java.io.IOException;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import exceptions.ExcessiveDeliveryException;
+import exceptions.ItemTooHeavyException;
+
+/**
+ * Simulates a campus of buildings, each with its own Automail, MailPool and mail generator.
+ * The buildings are sharded across a fixed pool of worker threads which advance in
+ * bulk-synchronous supersteps: every worker steps each of its buildings through the superstep
+ * and then waits at a barrier until the others have caught up.
+ */
+public class Campus {
+
+	private final Simulation[] buildings;
+	private final Throwable[] failures;
+	private final int threads;
+	private final int superstep;
+
+	/** Buildings that are neither complete nor failed */
+	private final AtomicInteger remaining;
+	private volatile boolean finished = false;
+	private int supersteps = 0;
+	private long elapsedMillis = 0;
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		Configuration config = Configuration.load("automail.properties");
+		if (args.length > 0) {
+			config.seed = Integer.parseInt(args[0]);
+		}
+		int buildings = config.getInt("Buildings", 100);
+		int threads = config.getInt("Campus_Threads", Runtime.getRuntime().availableProcessors());
+		int superstep = config.getInt("Campus_Superstep", 1);
+		System.out.printf("Buildings: %5d%n", buildings);
+		System.out.printf("Campus_Threads: %5d%n", threads);
+		System.out.printf("Campus_Superstep: %5d%n", superstep);
+
+		Campus campus = new Campus(config, buildings, threads, superstep);
+		campus.run();
+		campus.printResults();
+	}
+
+	/**
+	 * Builds every building of the campus. Building i uses the configured seed plus i, and its
+	 * floors are taken in turn from Campus_Floors when that property is set.
+	 * @param config the settings shared by every building
+	 * @param buildings how many buildings are on the campus
+	 * @param threads how many worker threads share the buildings
+	 * @param superstep how many ticks each worker runs between barriers
+	 */
+	public Campus(Configuration config, int buildings, int threads, int superstep) {
+		assert (buildings > 0 && threads > 0 && superstep > 0);
+		if (config.arrivalRate > 0) {
+			throw new IllegalArgumentException("A campus with continuous arrivals never completes");
+		}
+		int[] floors = config.getInts("Campus_Floors", new int[] { config.floors });
+		this.buildings = new Simulation[buildings];
+		this.failures = new Throwable[buildings];
+		for (int i = 0; i < buildings; i++) {
+			Configuration buildingConfig = config.copy();
+			buildingConfig.floors = floors[i % floors.length];
+			if (config.seed != null) {
+				buildingConfig.seed = config.seed + i;
+			}
+			this.buildings[i] = new Simulation(buildingConfig, false);
+		}
+		this.threads = Math.min(threads, buildings);
+		this.superstep = superstep;
+		this.remaining = new AtomicInteger(buildings);
+	}
+
+	/**
+	 * Runs every building to completion
+	 */
+	public void run() throws InterruptedException {
+		long start = System.currentTimeMillis();
+		CyclicBarrier barrier = new CyclicBarrier(threads, () -> {
+			supersteps++;
+			finished = remaining.get() == 0;
+		});
+		Thread[] workers = new Thread[threads];
+		for (int w = 0; w < threads; w++) {
+			workers[w] = new Thread(new Shard(w, barrier), "campus-shard-" + w);
+			workers[w].start();
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		elapsedMillis = System.currentTimeMillis() - start;
+	}
+
+	/**
+	 * The buildings stepped by one worker, interleaved so that each worker gets a mix of
+	 * building sizes when Campus_Floors varies
+	 */
+	private class Shard implements Runnable {
+		private final int first;
+		private final CyclicBarrier barrier;
+		private final boolean[] done;
+
+		Shard(int first, CyclicBarrier barrier) {
+			this.first = first;
+			this.barrier = barrier;
+			this.done = new boolean[buildings.length];
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (!finished) {
+					for (int i = first; i < buildings.length; i += threads) {
+						if (!done[i]) {
+							done[i] = advance(i);
+						}
+					}
+					barrier.await();
+				}
+			} catch (InterruptedException | BrokenBarrierException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				if (!finished) {
+					// this shard stopped early, so release the others rather than leave them waiting
+					barrier.reset();
+				}
+			}
+		}
+
+		/**
+		 * @return true if the building has finished, either complete or failed
+		 */
+		private boolean advance(int i) {
+			Simulation building = buildings[i];
+			try {
+				for (int t = 0; t < superstep && !building.isComplete(); t++) {
+					building.step();
+				}
+			} catch (ExcessiveDeliveryException | ItemTooHeavyException | RuntimeException e) {
+				failures[i] = e;
+			}
+			if (failures[i] != null || building.isComplete()) {
+				remaining.decrementAndGet();
+				return true;
+			}
+			return false;
+		}
+	}
+
+	public SimulationResult getResult(int building) {
+		return buildings[building].getResult();
+	}
+
+	public void printResults() {
+		int delivered = 0;
+		int failed = 0;
+		int finalTime = 0;
+		long totalTime = 0;
+		double totalScore = 0;
+		for (int i = 0; i < buildings.length; i++) {
+			if (failures[i] != null) {
+				failed++;
+				System.out.printf("Building %d unable to complete: %s%n", i, failures[i].getMessage());
+				continue;
+			}
+			SimulationResult result = buildings[i].getResult();
+			delivered += result.delivered;
+			finalTime = Math.max(finalTime, result.finalTime);
+			totalTime += result.finalTime;
+			totalScore += result.score;
+		}
+		int completed = buildings.length - failed;
+		System.out.printf("Campus complete! %d supersteps on %d threads in %d ms%n", supersteps, threads,
+				elapsedMillis);
+		System.out.printf("Buildings completed: %d of %d%n", completed, buildings.length);
+		System.out.printf("Delivered: %d%n", delivered);
+		System.out.println("Final Delivery time: " + finalTime);
+		System.out.printf("Mean Delivery time: %.1f%n", completed == 0 ? 0.0 : (double) totalTime / completed);
+		System.out.printf("Final Score: %.2f%n", totalScore);
+	}
+}
@@ -1,18 +1,29 @@
-package automail;
-
-public class Clock {
-	
-	/** Represents the current time **/
-    private static int Time = 0;
-    
-    /** The threshold for the latest time for mail to arrive **/
-    public static int LAST_DELIVERY_TIME;
-
-    public static int Time() {
-    	return Time;
-    }
-    
-    public static void Tick() {
-    	Time++;
-    }
-}
+package automail;
+
+public class Clock {
+	
+	/** Represents the current time **/
+    private int Time = 0;
+    
+    /** The threshold for the latest time for mail to arrive **/
+    public final int LAST_DELIVERY_TIME;
+
+    public Clock(int lastDeliveryTime) {
+    	this.LAST_DELIVERY_TIME = lastDeliveryTime;
+    }
+
+    public int Time() {
+    	return Time;
+    }
+    
+    public void Tick() {
+    	Time++;
+    }
+
+    /**
+     * Sets the time of a simulation resumed from a snapshot
+     */
+    void setTime(int time) {
+    	Time = time;
+    }
+}
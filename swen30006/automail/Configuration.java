@@ -0,0 +1,205 @@
+package automail;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Properties;
+
+import strategies.PoolOrder;
+
+/**
+ * The settings a simulation is built from, normally read from automail.properties
+ */
+public class Configuration {
+
+	/** The number of floors in the building */
+	public int floors;
+	/** Whether the mail is fragile */
+	public boolean fragile;
+	/** Roughly how many mail items to create */
+	public int mailToCreate;
+	/** The heaviest mail item that can arrive */
+	public int mailMaxWeight;
+	/** The threshold for the latest time for mail to arrive */
+	public int lastDeliveryTime;
+	/** The number of robots in the building */
+	public int robots;
+	/** The floor of each mailroom, robots are shared between them in turn */
+	public int[] mailroomFloors;
+	/** The heaviest items the pools give to one, two and three robots */
+	public int individualMaxWeight;
+	public int pairMaxWeight;
+	public int tripleMaxWeight;
+	/** The order the pools hand out their items in */
+	public PoolOrder poolOrder;
+	/** Whether MailPool fills a robot's tube with an item on the way to its hand item */
+	public boolean routeAwareLoading;
+	/** The pool strategy, strategies.MailPool or strategies.AgingMailPool */
+	public String mailPool;
+	/** For the aging pool, the priority an item gains each time step it waits */
+	public double agingRate;
+	/** For the aging pool, the 99th percentile latency the pool aims for, 0 for none */
+	public int latencyTarget;
+	/** Extra objectives to score deliveries under, see ScoringPipeline.parse */
+	public String objectives;
+	/** Threads generating the mail in parallel blocks, 0 for the original sequential mail */
+	public int generationThreads;
+	/** The arrival times in each block of parallel generation */
+	public int generationBlock;
+	/** Whether the robots are kept as a RobotFleet of arrays rather than Robot objects */
+	public boolean fleet;
+	/** Whether simulations keep a digest of their events, see TraceDigest */
+	public boolean traceDigest;
+	/** The seed for the mail generator, null if the mail is randomised */
+	public Integer seed;
+	/** A recorded ArrivalLog to replay instead of generating mail, null to generate it */
+	public String arrivalLog;
+	/** The mean number of items arriving each time step, 0 to generate Mail_to_Create items up front */
+	public double arrivalRate;
+	/** With continuous arrivals, the time steps SteadyState measures over */
+	public int steadyWindow;
+	/** With continuous arrivals, the time steps between SteadyState's reports */
+	public int steadyReportInterval;
+
+	/** Every property read, so that other modes can look up their own settings */
+	public final Properties properties;
+
+	public Configuration(Properties properties) {
+		this.properties = properties;
+		floors = Integer.parseInt(properties.getProperty("Floors"));
+		fragile = Boolean.parseBoolean(properties.getProperty("Fragile"));
+		mailToCreate = Integer.parseInt(properties.getProperty("Mail_to_Create"));
+		mailMaxWeight = Integer.parseInt(properties.getProperty("Mail_Max_Weight"));
+		lastDeliveryTime = Integer.parseInt(properties.getProperty("Last_Delivery_Time"));
+		robots = Integer.parseInt(properties.getProperty("Robots"));
+		mailroomFloors = getInts("Mailroom_Floors", new int[] { Building.MAILROOM_LOCATION });
+		individualMaxWeight = getInt("Individual_Max_Weight", Robot.INDIVIDUAL_MAX_WEIGHT);
+		pairMaxWeight = getInt("Pair_Max_Weight", Robot.PAIR_MAX_WEIGHT);
+		tripleMaxWeight = getInt("Triple_Max_Weight", Robot.TRIPLE_MAX_WEIGHT);
+		poolOrder = PoolOrder.valueOf(properties.getProperty("Pool_Order", "PRIORITY_HIGHEST_FLOOR").trim());
+		routeAwareLoading = Boolean.parseBoolean(properties.getProperty("Route_Aware_Loading", "false").trim());
+		mailPool = properties.getProperty("MailPool", "strategies.MailPool").trim();
+		agingRate = getDouble("Aging_Rate", 0.5);
+		latencyTarget = getInt("Latency_Target", 0);
+		objectives = properties.getProperty("Objectives", "").trim();
+		generationThreads = getInt("Generation_Threads", 0);
+		generationBlock = getInt("Generation_Block", 1024);
+		if (generationBlock <= 0) {
+			throw new IllegalArgumentException("Generation_Block must be at least 1, not " + generationBlock);
+		}
+		fleet = Boolean.parseBoolean(properties.getProperty("Fleet", "false").trim());
+		traceDigest = Boolean.parseBoolean(properties.getProperty("Trace_Digest", "false").trim());
+		String seedProp = properties.getProperty("Seed");
+		seed = seedProp == null ? null : Integer.valueOf(seedProp);
+		arrivalRate = getDouble("Arrival_Rate", 0);
+		steadyWindow = getInt("Steady_Window", 1000);
+		if (steadyWindow <= 0) {
+			throw new IllegalArgumentException("Steady_Window must be at least 1, not " + steadyWindow);
+		}
+		steadyReportInterval = getInt("Steady_Report_Interval", steadyWindow);
+		if (steadyReportInterval <= 0) {
+			throw new IllegalArgumentException("Steady_Report_Interval must be at least 1, not " + steadyReportInterval);
+		}
+		String logProp = properties.getProperty("Arrival_Log", "").trim();
+		arrivalLog = logProp.isEmpty() ? null : logProp;
+	}
+
+	private Configuration(Configuration other) {
+		properties = new Properties();
+		properties.putAll(other.properties);
+		floors = other.floors;
+		fragile = other.fragile;
+		mailToCreate = other.mailToCreate;
+		mailMaxWeight = other.mailMaxWeight;
+		lastDeliveryTime = other.lastDeliveryTime;
+		robots = other.robots;
+		mailroomFloors = other.mailroomFloors.clone();
+		individualMaxWeight = other.individualMaxWeight;
+		pairMaxWeight = other.pairMaxWeight;
+		tripleMaxWeight = other.tripleMaxWeight;
+		poolOrder = other.poolOrder;
+		routeAwareLoading = other.routeAwareLoading;
+		mailPool = other.mailPool;
+		agingRate = other.agingRate;
+		latencyTarget = other.latencyTarget;
+		objectives = other.objectives;
+		generationThreads = other.generationThreads;
+		generationBlock = other.generationBlock;
+		fleet = other.fleet;
+		traceDigest = other.traceDigest;
+		seed = other.seed;
+		arrivalRate = other.arrivalRate;
+		steadyWindow = other.steadyWindow;
+		steadyReportInterval = other.steadyReportInterval;
+		arrivalLog = other.arrivalLog;
+	}
+
+	/**
+	 * @return an independent copy that can be changed without affecting this configuration
+	 */
+	public Configuration copy() {
+		return new Configuration(this);
+	}
+
+	/**
+	 * Reads a properties file over the default properties
+	 * @param fileName the properties file to read
+	 */
+	public static Configuration load(String fileName) throws IOException {
+		Properties automailProperties = new Properties();
+		// Default properties
+		automailProperties.setProperty("Robots", "3");
+		automailProperties.setProperty("MailPool", "strategies.MailPool");
+		automailProperties.setProperty("Floors", "10");
+		automailProperties.setProperty("Fragile", "false");
+		automailProperties.setProperty("Mail_to_Create", "80");
+		automailProperties.setProperty("Mail_Max_Weight", "2000");
+		automailProperties.setProperty("Last_Delivery_Time", "100");
+
+		// Read properties
+		FileReader inStream = null;
+		try {
+			inStream = new FileReader(fileName);
+			automailProperties.load(inStream);
+		} finally {
+			if (inStream != null) {
+				inStream.close();
+			}
+		}
+		return new Configuration(automailProperties);
+	}
+
+	/**
+	 * @param key the name of an optional property
+	 * @param defaultValue the value used when the property is not set
+	 */
+	public int getInt(String key, int defaultValue) {
+		String value = properties.getProperty(key);
+		return value == null ? defaultValue : Integer.parseInt(value.trim());
+	}
+
+	/**
+	 * @param key the name of an optional property
+	 * @param defaultValue the value used when the property is not set
+	 */
+	public double getDouble(String key, double defaultValue) {
+		String value = properties.getProperty(key);
+		return value == null ? defaultValue : Double.parseDouble(value.trim());
+	}
+
+	/**
+	 * @param key the name of an optional comma separated list of numbers
+	 * @param defaultValue the list used when the property is not set
+	 */
+	public int[] getInts(String key, int[] defaultValue) {
+		String value = properties.getProperty(key);
+		if (value == null || value.trim().isEmpty()) {
+			return defaultValue;
+		}
+		String[] parts = value.split(",");
+		int[] values = new int[parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			values[i] = Integer.parseInt(parts[i].trim());
+		}
+		return values;
+	}
+}
@@ -0,0 +1,119 @@
+package automail;
+
+import automail.Robot.RobotState;
+
+/**
+ * Prints the events of a single simulation, stamped with that simulation's clock.
+ * A quiet log skips the formatting entirely so many simulations can run side by side.
+ * Events are also added to the simulation's trace digest, if it keeps one.
+ */
+public class EventLog {
+
+	private final Clock clock;
+	private final boolean verbose;
+	/** null unless the simulation keeps a digest */
+	private final TraceDigest trace;
+
+	public EventLog(Clock clock, boolean verbose) {
+		this(clock, verbose, null);
+	}
+
+	public EventLog(Clock clock, boolean verbose, TraceDigest trace) {
+		this.clock = clock;
+		this.verbose = verbose;
+		this.trace = trace;
+	}
+
+	public boolean isVerbose() {
+		return verbose;
+	}
+
+	/**
+	 * A mail item has arrived at the building
+	 */
+	public void newArrival(MailItem mailItem) {
+		if (trace != null) {
+			trace.event(TraceDigest.ARRIVAL, clock.Time(), mailItem.getNumber(), mailItem.getDestFloor(),
+					mailItem.getWeight());
+		}
+		if (verbose) {
+			System.out.printf("T: %3d > new addToPool [%s]%n", clock.Time(), mailItem.toString());
+		}
+	}
+
+	/**
+	 * A robot has brought an undelivered item back to the pool
+	 */
+	public void returnedToPool(MailItem mailItem) {
+		if (trace != null) {
+			trace.event(TraceDigest.RETURNED, clock.Time(), mailItem.getNumber(), 0, 0);
+		}
+		if (verbose) {
+			System.out.printf("T: %3d > old addToPool [%s]%n", clock.Time(), mailItem.toString());
+		}
+	}
+
+	/**
+	 * An idle mailroom has taken an item from a busier one
+	 */
+	public void stolen(MailItem mailItem, int fromMailroom, int toMailroom) {
+		if (trace != null) {
+			trace.event(TraceDigest.STOLEN, clock.Time(), mailItem.getNumber(), fromMailroom, toMailroom);
+		}
+		if (verbose) {
+			System.out.printf("T: %3d > stolen [%s] from mailroom %d to %d%n", clock.Time(), mailItem.toString(),
+					fromMailroom, toMailroom);
+		}
+	}
+
+	public void stateChanged(Robot robot, RobotState from, RobotState to) {
+		if (trace != null) {
+			trace.event(TraceDigest.STATE, clock.Time(), robot.getNumber(), from.ordinal(), to.ordinal());
+		}
+		if (verbose) {
+			System.out.printf("T: %3d > %7s changed from %s to %s%n", clock.Time(), robot.getIdTube(), from, to);
+		}
+	}
+
+	/**
+	 * A pool has given a robot an item, to its hand or its tube. Only traced, not printed.
+	 */
+	public void loaded(Robot robot, MailItem mailItem, boolean tube) {
+		if (trace != null) {
+			trace.event(TraceDigest.LOAD, clock.Time(), robot.getNumber(), mailItem.getNumber(), tube ? 1 : 0);
+		}
+	}
+
+	/**
+	 * A robot has set off towards the floor of its delivery item
+	 */
+	public void dispatched(Robot robot, MailItem deliveryItem) {
+		if (trace != null) {
+			trace.event(TraceDigest.DISPATCH, clock.Time(), robot.getNumber(), deliveryItem.getNumber(), 0);
+		}
+		if (verbose) {
+			System.out.printf("T: %3d > %7s-> [%s]%n", clock.Time(), robot.getIdTube(), deliveryItem.toString());
+		}
+	}
+
+	/**
+	 * @param count how many items have been delivered so far, including this one
+	 */
+	public void delivered(int count, MailItem mailItem) {
+		if (trace != null) {
+			trace.event(TraceDigest.DELIVERED, clock.Time(), mailItem.getNumber(), count, 0);
+		}
+		if (verbose) {
+			System.out.printf("T: %3d > Delivered(%4d) [%s]%n", clock.Time(), count, mailItem.toString());
+		}
+	}
+
+	/**
+	 * The end of a time step
+	 */
+	void endTick() {
+		if (trace != null) {
+			trace.endTick(clock.Time());
+		}
+	}
+}
@@ -1,14 +1,14 @@
-package automail;
-
-/**
- * a MailDelivery is used by the Robot to deliver mail once it has arrived at the correct location
- */
-public interface IMailDelivery {
-
-	/**
-     * Delivers an item at its floor
-     * @param mailItem the mail item being delivered.
-     */
-	void deliver(MailItem mailItem,int numsOfTeam);
-    
+package automail;
+
+/**
+ * a MailDelivery is used by the Robot to deliver mail once it has arrived at the correct location
+ */
+public interface IMailDelivery {
+
+	/**
+     * Delivers an item at its floor
+     * @param mailItem the mail item being delivered.
+     */
+	void deliver(MailItem mailItem,int numsOfTeam);
+    
 }
\ No newline at end of file
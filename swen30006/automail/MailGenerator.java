@@ -1,150 +1,509 @@
-package automail;
-
-import java.util.*;
-
-import strategies.IMailPool;
-
-/**
- * This class generates the mail
- */
-public class MailGenerator {
-
-    public final int MAIL_TO_CREATE;
-    public final int MAIL_MAX_WEIGHT;
-    
-    private int mailCreated;
-
-    private final Random random;
-    /** This seed is used to make the behaviour deterministic */
-    
-    private boolean complete;
-    private IMailPool mailPool;
-
-    private Map<Integer,ArrayList<MailItem>> allMail;
-
-    /**
-     * Constructor for mail generation
-     * @param mailToCreate roughly how many mail items to create
-     * @param mailPool where mail items go on arrival
-     * @param seed random seed for generating mail
-     */
-    public MailGenerator(int mailToCreate, int mailMaxWeight, IMailPool mailPool, HashMap<Boolean,Integer> seed){
-        if(seed.containsKey(true)){
-        	this.random = new Random((long) seed.get(true));
-        }
-        else{
-        	this.random = new Random();	
-        }
-        // Vary arriving mail by +/-20%
-        MAIL_TO_CREATE = mailToCreate*4/5 + random.nextInt(mailToCreate*2/5);
-        MAIL_MAX_WEIGHT = mailMaxWeight;
-        // System.out.println("Num Mail Items: "+MAIL_TO_CREATE);
-        mailCreated = 0;
-        complete = false;
-        allMail = new HashMap<Integer,ArrayList<MailItem>>();
-        this.mailPool = mailPool;
-    }
-
-    /**
-     * @return a new mail item that needs to be delivered
-     */
-    private MailItem generateMail(){
-    	MailItem newMailItem;
-        int dest_floor = generateDestinationFloor();
-        int priority_level = generatePriorityLevel();
-        int arrival_time = generateArrivalTime();
-        int weight = generateWeight();
-        // Check if arrival time has a priority mail
-        if(	(random.nextInt(6) > 0) ||  // Skew towards non priority mail
-        	(allMail.containsKey(arrival_time) &&
-        	allMail.get(arrival_time).stream().anyMatch(e -> PriorityMailItem.class.isInstance(e))))
-        {
-        	newMailItem = new MailItem(dest_floor,arrival_time,weight);      	
-        } else {
-        	newMailItem = new PriorityMailItem(dest_floor,arrival_time,weight,priority_level);
-        }
-        return newMailItem;
-    }
-
-    /**
-     * @return a destination floor between the ranges of GROUND_FLOOR to FLOOR
-     */
-    private int generateDestinationFloor(){
-        return Building.LOWEST_FLOOR + random.nextInt(Building.FLOORS);
-    }
-
-    /**
-     * @return a random priority level selected from 1 - 100
-     */
-    private int generatePriorityLevel(){
-        return 10*(1 + random.nextInt(10));
-    }
-
-    /**
-     * @return a random weight
-     */
-    private int generateWeight(){
-    	final double mean = 200.0; // grams for normal item
-    	final double stddev = 1000.0; // grams
-    	double base = random.nextGaussian();
-    	if (base < 0) base = -base;
-    	int weight = (int) (mean + base * stddev);
-        return weight > MAIL_MAX_WEIGHT ? MAIL_MAX_WEIGHT : weight;
-    }
-    
-    /**
-     * @return a random arrival time before the last delivery time
-     */
-    private int generateArrivalTime(){
-        return 1 + random.nextInt(Clock.LAST_DELIVERY_TIME);
-    }
-
-    /**
-     * This class initializes all mail and sets their corresponding values,
-     */
-    public void generateAllMail(){
-        while(!complete){
-            MailItem newMail =  generateMail();
-            int timeToDeliver = newMail.getArrivalTime();
-            /** Check if key exists for this time **/
-            if(allMail.containsKey(timeToDeliver)){
-                /** Add to existing array */
-                allMail.get(timeToDeliver).add(newMail);
-            }
-            else{
-                /** If the key doesn't exist then set a new key along with the array of MailItems to add during
-                 * that time step.
-                 */
-                ArrayList<MailItem> newMailList = new ArrayList<MailItem>();
-                newMailList.add(newMail);
-                allMail.put(timeToDeliver,newMailList);
-            }
-            /** Mark the mail as created */
-            mailCreated++;
-
-            /** Once we have satisfied the amount of mail to create, we're done!*/
-            if(mailCreated == MAIL_TO_CREATE){
-                complete = true;
-            }
-        }
-
-    }
-    
-    /**
-     * While there are steps left, create a new mail item to deliver
-     * @return Priority
-     */
-    public PriorityMailItem step(){
-    	PriorityMailItem priority = null;
-    	// Check if there are any mail to create
-        if(this.allMail.containsKey(Clock.Time())){
-            for(MailItem mailItem : allMail.get(Clock.Time())){
-            	if (mailItem instanceof PriorityMailItem) priority = ((PriorityMailItem) mailItem);
-                System.out.printf("T: %3d > new addToPool [%s]%n", Clock.Time(), mailItem.toString());
-                mailPool.addToPool(mailItem);
-            }
-        }
-        return priority;
-    }
-    
-}
+package automail;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import exceptions.ItemTooHeavyException;
+import strategies.Automail;
+
+/**
+ * This class generates the mail
+ */
+public class MailGenerator implements MailSource {
+
+    public final int MAIL_TO_CREATE;
+    public final int MAIL_MAX_WEIGHT;
+    /** The mean number of items arriving each time step in continuous mode, 0 otherwise */
+    public final double ARRIVAL_RATE;
+    
+    private int mailCreated;
+    private int arrivals;
+
+    private final RecordableRandom random;
+    /** This seed is used to make the behaviour deterministic */
+    
+    private boolean complete;
+    private Automail automail;
+    private final Building building;
+    private final Clock clock;
+    private final EventLog log;
+
+    private Map<Integer,ArrayList<MailItem>> allMail;
+    /** True once allMail is shared with checkpoints, which must not see it change */
+    private boolean sharedMail;
+
+    /**
+     * Constructor for mail generation
+     * @param mailToCreate roughly how many mail items to create
+     * @param building the building the mail is addressed within
+     * @param clock the clock of the simulation the mail arrives in
+     * @param log where arrivals are reported
+     * @param automail sorts mail items into its mailrooms on arrival
+     * @param seed random seed for generating mail
+     */
+    public MailGenerator(int mailToCreate, int mailMaxWeight, Building building, Clock clock, EventLog log,
+    		Automail automail, HashMap<Boolean,Integer> seed){
+        if(seed.containsKey(true)){
+        	this.random = new RecordableRandom((long) seed.get(true));
+        }
+        else{
+        	this.random = new RecordableRandom();	
+        }
+        // Vary arriving mail by +/-20%
+        MAIL_TO_CREATE = mailToCreate*4/5 + random.nextInt(mailToCreate*2/5);
+        MAIL_MAX_WEIGHT = mailMaxWeight;
+        ARRIVAL_RATE = 0;
+        // System.out.println("Num Mail Items: "+MAIL_TO_CREATE);
+        mailCreated = 0;
+        complete = false;
+        allMail = new HashMap<Integer,ArrayList<MailItem>>();
+        this.building = building;
+        this.clock = clock;
+        this.log = log;
+        this.automail = automail;
+    }
+
+    /**
+     * Constructor for continuous mail generation: items keep arriving at the given rate for as
+     * long as the simulation runs, and are generated as they arrive rather than all in advance
+     * @param arrivalRate the mean number of items arriving each time step
+     */
+    public MailGenerator(double arrivalRate, int mailMaxWeight, Building building, Clock clock, EventLog log,
+    		Automail automail, HashMap<Boolean,Integer> seed){
+        if(seed.containsKey(true)){
+        	this.random = new RecordableRandom((long) seed.get(true));
+        }
+        else{
+        	this.random = new RecordableRandom();	
+        }
+        MAIL_TO_CREATE = 0;
+        MAIL_MAX_WEIGHT = mailMaxWeight;
+        ARRIVAL_RATE = arrivalRate;
+        mailCreated = 0;
+        complete = true; // nothing is generated in advance
+        allMail = new HashMap<Integer,ArrayList<MailItem>>();
+        this.building = building;
+        this.clock = clock;
+        this.log = log;
+        this.automail = automail;
+    }
+
+    /**
+     * Constructor for a mail generator resumed from a snapshot, see {@link #writeState}
+     * @param mail the mail shared by a checkpoint, which saves none, or null
+     */
+    MailGenerator(DataInput in, int mailMaxWeight, Building building, Clock clock, EventLog log, Automail automail,
+    		Map<Integer,MailItem> items, Map<Integer,ArrayList<MailItem>> mail) throws IOException {
+        MAIL_TO_CREATE = in.readInt();
+        MAIL_MAX_WEIGHT = mailMaxWeight;
+        ARRIVAL_RATE = in.readDouble();
+        mailCreated = in.readInt();
+        complete = in.readBoolean();
+        random = new RecordableRandom();
+        random.readState(in);
+        allMail = new HashMap<Integer,ArrayList<MailItem>>();
+        int times = in.readInt();
+        if (times == -1) {
+            if (mail == null) {
+                throw new IOException("The snapshot is a checkpoint, without the mail it shares");
+            }
+            allMail = mail;
+            sharedMail = true;
+        }
+        for (int t = 0; t < times; t++) {
+            int arrival_time = in.readInt();
+            int count = in.readInt();
+            ArrayList<MailItem> mailList = new ArrayList<MailItem>(count);
+            for (int i = 0; i < count; i++) mailList.add(Snapshot.readItem(in, items));
+            allMail.put(arrival_time, mailList);
+        }
+        this.building = building;
+        this.clock = clock;
+        this.log = log;
+        this.automail = automail;
+    }
+
+    /**
+     * Saves the generator's random sequence position and the mail still to arrive
+     */
+    public void writeState(DataOutput out) throws IOException {
+        writeState(out, true);
+    }
+
+    /**
+     * @param withMail false to leave out the mail still to arrive, for a checkpoint that
+     *        shares it, see {@link #shareMail}
+     */
+    void writeState(DataOutput out, boolean withMail) throws IOException {
+        out.writeInt(MAIL_TO_CREATE);
+        out.writeDouble(ARRIVAL_RATE);
+        out.writeInt(mailCreated);
+        out.writeBoolean(complete);
+        random.writeState(out);
+        if (!withMail) {
+            out.writeInt(-1);
+            return;
+        }
+        TreeMap<Integer,ArrayList<MailItem>> pending = new TreeMap<Integer,ArrayList<MailItem>>();
+        for (Map.Entry<Integer,ArrayList<MailItem>> entry : allMail.entrySet()) {
+            if (entry.getKey() >= clock.Time()) pending.put(entry.getKey(), entry.getValue());
+        }
+        out.writeInt(pending.size());
+        for (Map.Entry<Integer,ArrayList<MailItem>> entry : pending.entrySet()) {
+            out.writeInt(entry.getKey());
+            out.writeInt(entry.getValue().size());
+            for (MailItem mailItem : entry.getValue()) Snapshot.writeItem(out, mailItem);
+        }
+    }
+
+    /**
+     * Shares the mail to arrive with checkpoints rather than copying it into them; from now
+     * on a change of priority copies what it changes
+     * @return the mail by arrival time, not to be changed
+     */
+    Map<Integer,ArrayList<MailItem>> shareMail() {
+        sharedMail = true;
+        return allMail;
+    }
+
+    /**
+     * Gives an item that has not arrived yet a new priority level, for what-if runs. The
+     * item's time step is copied first, as are all of them if the mail is shared.
+     * @param priorityLevel the new level, 0 to make it ordinary mail
+     * @return false if the item has already arrived, or never will
+     */
+    boolean changePriority(int number, int priorityLevel) {
+        for (Map.Entry<Integer,ArrayList<MailItem>> entry : allMail.entrySet()) {
+            if (entry.getKey() < clock.Time()) continue;
+            ArrayList<MailItem> mailList = entry.getValue();
+            for (int i = 0; i < mailList.size(); i++) {
+                MailItem old = mailList.get(i);
+                if (old.getNumber() == number) {
+                    if (sharedMail) {
+                        allMail = new HashMap<Integer,ArrayList<MailItem>>(allMail);
+                        sharedMail = false;
+                    }
+                    mailList = new ArrayList<MailItem>(mailList);
+                    allMail.put(entry.getKey(), mailList);
+                    mailList.set(i, priorityLevel == 0
+                            ? new MailItem(number, old.getDestFloor(), old.getArrivalTime(), old.getWeight())
+                            : new PriorityMailItem(number, old.getDestFloor(), old.getArrivalTime(), old.getWeight(),
+                                    priorityLevel));
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sends arrivals to another automail, once the simulation is reconfigured
+     */
+    void setAutomail(Automail automail) {
+        this.automail = automail;
+    }
+
+    /**
+     * @return every item to arrive, in order of arrival
+     */
+    List<MailItem> getAllMail() {
+        List<MailItem> items = new ArrayList<MailItem>();
+        for (ArrayList<MailItem> mailList : new TreeMap<Integer,ArrayList<MailItem>>(allMail).values()) {
+            items.addAll(mailList);
+        }
+        return items;
+    }
+
+    /**
+     * @return a new mail item that needs to be delivered
+     */
+    private MailItem generateMail(){
+    	MailItem newMailItem;
+        int dest_floor = generateDestinationFloor();
+        int priority_level = generatePriorityLevel();
+        int arrival_time = generateArrivalTime();
+        int weight = generateWeight();
+        // Check if arrival time has a priority mail
+        if(	(random.nextInt(6) > 0) ||  // Skew towards non priority mail
+        	(allMail.containsKey(arrival_time) &&
+        	allMail.get(arrival_time).stream().anyMatch(e -> PriorityMailItem.class.isInstance(e))))
+        {
+        	newMailItem = new MailItem(mailCreated,dest_floor,arrival_time,weight);      	
+        } else {
+        	newMailItem = new PriorityMailItem(mailCreated,dest_floor,arrival_time,weight,priority_level);
+        }
+        return newMailItem;
+    }
+
+    /**
+     * @param priorityArrived whether a priority item has already arrived in this time step
+     * @return a new mail item arriving now, in continuous mode
+     */
+    private MailItem generateArrivingMail(boolean priorityArrived){
+        MailItem newMailItem;
+        int dest_floor = generateDestinationFloor();
+        int priority_level = generatePriorityLevel();
+        int weight = generateWeight();
+        // Numbers only need to be unique among the items in the building, so may wrap
+        int number = mailCreated;
+        mailCreated = mailCreated == Integer.MAX_VALUE ? 0 : mailCreated + 1;
+        if ((random.nextInt(6) > 0) || priorityArrived) {  // Skew towards non priority mail
+            newMailItem = new MailItem(number,dest_floor,clock.Time(),weight);
+        } else {
+            newMailItem = new PriorityMailItem(number,dest_floor,clock.Time(),weight,priority_level);
+        }
+        return newMailItem;
+    }
+
+    /**
+     * @return a Poisson distributed number of items arriving in one time step
+     */
+    private int generateArrivalCount(){
+        if (ARRIVAL_RATE < 30) {
+            double limit = Math.exp(-ARRIVAL_RATE);
+            double product = random.nextDouble();
+            int count = 0;
+            while (product > limit) {
+                count++;
+                product *= random.nextDouble();
+            }
+            return count;
+        }
+        // Normal approximation for high rates
+        int count = (int) Math.round(ARRIVAL_RATE + Math.sqrt(ARRIVAL_RATE) * random.nextGaussian());
+        return count < 0 ? 0 : count;
+    }
+
+    /**
+     * @return a destination floor between the ranges of GROUND_FLOOR to FLOOR
+     */
+    private int generateDestinationFloor(){
+        return Building.LOWEST_FLOOR + random.nextInt(building.FLOORS);
+    }
+
+    /**
+     * @return a random priority level selected from 1 - 100
+     */
+    private int generatePriorityLevel(){
+        return 10*(1 + random.nextInt(10));
+    }
+
+    /**
+     * @return a random weight
+     */
+    private int generateWeight(){
+    	final double mean = 200.0; // grams for normal item
+    	final double stddev = 1000.0; // grams
+    	double base = random.nextGaussian();
+    	if (base < 0) base = -base;
+    	int weight = (int) (mean + base * stddev);
+        return weight > MAIL_MAX_WEIGHT ? MAIL_MAX_WEIGHT : weight;
+    }
+    
+    /**
+     * @return a random arrival time before the last delivery time
+     */
+    private int generateArrivalTime(){
+        return 1 + random.nextInt(clock.LAST_DELIVERY_TIME);
+    }
+
+    /**
+     * This class initializes all mail and sets their corresponding values,
+     */
+    public void generateAllMail(){
+        while(!complete){
+            MailItem newMail =  generateMail();
+            int timeToDeliver = newMail.getArrivalTime();
+            /** Check if key exists for this time **/
+            if(allMail.containsKey(timeToDeliver)){
+                /** Add to existing array */
+                allMail.get(timeToDeliver).add(newMail);
+            }
+            else{
+                /** If the key doesn't exist then set a new key along with the array of MailItems to add during
+                 * that time step.
+                 */
+                ArrayList<MailItem> newMailList = new ArrayList<MailItem>();
+                newMailList.add(newMail);
+                allMail.put(timeToDeliver,newMailList);
+            }
+            /** Mark the mail as created */
+            mailCreated++;
+
+            /** Once we have satisfied the amount of mail to create, we're done!*/
+            if(mailCreated == MAIL_TO_CREATE){
+                complete = true;
+            }
+        }
+
+    }
+    
+    /**
+     * Initializes all mail like {@link #generateAllMail}, but in parallel. The arrival times
+     * are cut into blocks; the number of items arriving in each block is drawn up front from
+     * one random sequence, and then each block draws its items from its own SplittableRandom
+     * on a fork-join pool. Items are numbered from the running total of the block sizes, so
+     * the mail is the same for a seed whatever the number of threads (though not the same as
+     * generateAllMail's).
+     * @param threads how many blocks are generated at once
+     * @param blockTicks the number of arrival times in each block
+     * @param seed the seed, or null to randomise
+     */
+    public void generateAllMailParallel(int threads, int blockTicks, Integer seed){
+        if (threads <= 0 || blockTicks <= 0) {
+            throw new IllegalArgumentException(
+                    "Parallel generation needs at least one thread and one time step a block");
+        }
+        SplittableRandom master = seed == null ? new SplittableRandom() : new SplittableRandom(seed);
+        int lastTime = clock.LAST_DELIVERY_TIME;
+        int blocks = (lastTime + blockTicks - 1) / blockTicks;
+        int[] counts = new int[blocks];
+        int[] firstNumbers = new int[blocks];
+        SplittableRandom[] streams = new SplittableRandom[blocks];
+        int remaining = MAIL_TO_CREATE;
+        for (int b = 0; b < blocks; b++) {
+            int length = Math.min(blockTicks, lastTime - b * blockTicks);
+            int remainingLength = lastTime - b * blockTicks;
+            counts[b] = binomial(master, remaining, (double) length / remainingLength);
+            firstNumbers[b] = MAIL_TO_CREATE - remaining;
+            remaining -= counts[b];
+            streams[b] = master.split();
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<ForkJoinTask<Map<Integer,ArrayList<MailItem>>>> tasks = new ArrayList<>(blocks);
+            for (int b = 0; b < blocks; b++) {
+                final int block = b;
+                tasks.add(pool.submit(() -> generateBlock(streams[block], 1 + block * blockTicks,
+                        Math.min(blockTicks, lastTime - block * blockTicks), counts[block], firstNumbers[block])));
+            }
+            for (ForkJoinTask<Map<Integer,ArrayList<MailItem>>> task : tasks) {
+                allMail.putAll(task.join());
+            }
+        } finally {
+            pool.shutdown();
+        }
+        mailCreated = MAIL_TO_CREATE;
+        complete = true;
+    }
+
+    /**
+     * @return the mail arriving in one block of time steps, as generateMail would make it
+     */
+    private Map<Integer,ArrayList<MailItem>> generateBlock(SplittableRandom random, int firstTime, int length,
+            int count, int firstNumber){
+        Map<Integer,ArrayList<MailItem>> blockMail = new HashMap<Integer,ArrayList<MailItem>>();
+        BitSet priorityTimes = new BitSet(length);
+        for (int i = 0; i < count; i++) {
+            int dest_floor = Building.LOWEST_FLOOR + random.nextInt(building.FLOORS);
+            int priority_level = 10*(1 + random.nextInt(10));
+            int arrival_time = firstTime + random.nextInt(length);
+            int weight = (int) (200.0 + Math.abs(nextGaussian(random)) * 1000.0);
+            weight = weight > MAIL_MAX_WEIGHT ? MAIL_MAX_WEIGHT : weight;
+            MailItem newMailItem;
+            // Skew towards non priority mail, at most one priority item each time step
+            if (random.nextInt(6) > 0 || priorityTimes.get(arrival_time - firstTime)) {
+                newMailItem = new MailItem(firstNumber + i,dest_floor,arrival_time,weight);
+            } else {
+                newMailItem = new PriorityMailItem(firstNumber + i,dest_floor,arrival_time,weight,priority_level);
+                priorityTimes.set(arrival_time - firstTime);
+            }
+            blockMail.computeIfAbsent(arrival_time, t -> new ArrayList<MailItem>()).add(newMailItem);
+        }
+        return blockMail;
+    }
+
+    /**
+     * @return a standard normal value, by the polar method as Random.nextGaussian
+     */
+    private static double nextGaussian(SplittableRandom random){
+        double v1, v2, s;
+        do {
+            v1 = 2 * random.nextDouble() - 1;
+            v2 = 2 * random.nextDouble() - 1;
+            s = v1 * v1 + v2 * v2;
+        } while (s >= 1 || s == 0);
+        return v1 * StrictMath.sqrt(-2 * StrictMath.log(s) / s);
+    }
+
+    /**
+     * @return a binomially distributed count of successes in n trials of probability p, by
+     *         inversion, or by the normal approximation when over 30 of either are expected
+     */
+    private static int binomial(SplittableRandom random, int n, double p){
+        if (n == 0 || p <= 0) return 0;
+        if (p >= 1) return n;
+        if (n * Math.min(p, 1 - p) >= 30) {
+            long k = Math.round(n * p + Math.sqrt(n * p * (1 - p)) * nextGaussian(random));
+            return (int) Math.max(0, Math.min(n, k));
+        }
+        if (p > 0.5) return n - binomial(random, n, 1 - p);
+        double s = p / (1 - p);
+        double a = (n + 1) * s;
+        double f = Math.pow(1 - p, n);
+        double u = random.nextDouble();
+        int k = 0;
+        while (u > f && k < n) {
+            u -= f;
+            k++;
+            f *= a / k - s;
+        }
+        return k;
+    }
+
+    /**
+     * While there are steps left, create a new mail item to deliver
+     * @return Priority
+     */
+    public PriorityMailItem step() throws ItemTooHeavyException {
+    	PriorityMailItem priority = null;
+    	arrivals = 0;
+    	if (ARRIVAL_RATE > 0) {
+    		arrivals = generateArrivalCount();
+    		for (int i = 0; i < arrivals; i++) {
+    			MailItem mailItem = generateArrivingMail(priority != null);
+    			if (mailItem instanceof PriorityMailItem) priority = ((PriorityMailItem) mailItem);
+    			log.newArrival(mailItem);
+    			automail.addToPool(mailItem);
+    		}
+    		return priority;
+    	}
+    	// Check if there are any mail to create
+        if(this.allMail.containsKey(clock.Time())){
+            arrivals = allMail.get(clock.Time()).size();
+            for(MailItem mailItem : allMail.get(clock.Time())){
+            	if (mailItem instanceof PriorityMailItem) priority = ((PriorityMailItem) mailItem);
+                log.newArrival(mailItem);
+                automail.addToPool(mailItem);
+            }
+        }
+        return priority;
+    }
+
+    /**
+     * @return how many items arrived in the last step
+     */
+    public int getArrivals() {
+        return arrivals;
+    }
+
+    /**
+     * @return how many items are generated, meaningless in continuous mode
+     */
+    public int getMailCount() {
+        return MAIL_TO_CREATE;
+    }
+
+    /**
+     * @return true if items keep arriving for as long as the simulation runs
+     */
+    public boolean isContinuous() {
+        return ARRIVAL_RATE > 0;
+    }
+    
+}
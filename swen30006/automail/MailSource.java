@@ -0,0 +1,39 @@
+package automail;
+
+import java.io.DataOutput;
+import java.io.IOException;
+
+import exceptions.ItemTooHeavyException;
+
+/**
+ * Where a simulation's mail comes from: the MailGenerator's random mail, or an ArrivalLog
+ * of recorded arrivals. Each time step the source adds the items arriving then to the pools.
+ */
+public interface MailSource {
+
+	/**
+	 * Adds the items arriving in the current time step to the pools
+	 * @return the last priority item to arrive, or null if none did
+	 */
+	PriorityMailItem step() throws ItemTooHeavyException;
+
+	/**
+	 * @return how many items arrived in the last step
+	 */
+	int getArrivals();
+
+	/**
+	 * @return how many items arrive in all, meaningless if arrivals are continuous
+	 */
+	int getMailCount();
+
+	/**
+	 * @return true if items keep arriving for as long as the simulation runs
+	 */
+	boolean isContinuous();
+
+	/**
+	 * Saves the source's position and anything still to arrive, for a snapshot
+	 */
+	void writeState(DataOutput out) throws IOException;
+}
@@ -1,263 +1,302 @@
-package automail;
-
-import exceptions.ExcessiveDeliveryException;
-import exceptions.ItemTooHeavyException;
-import strategies.IMailPool;
-import java.util.Map;
-import java.util.TreeMap;
-
-/**
- * The robot delivers mail!
- */
-public class Robot {
-
-	static public final int INDIVIDUAL_MAX_WEIGHT = 2000;
-	static public final int PAIR_MAX_WEIGHT = 2600;
-	static public final int TRIPLE_MAX_WEIGHT = 3000;
-
-	IMailDelivery delivery;
-	protected final String id;
-
-	/** Possible states the robot can be in */
-	public enum RobotState {
-		DELIVERING, WAITING, RETURNING
-	}
-
-	public RobotState current_state;
-	private int current_floor;
-	private int destination_floor;
-	private IMailPool mailPool;
-	private boolean receivedDispatch;
-
-	private MailItem deliveryItem = null;
-	private MailItem tube = null;
-	
-	private boolean teamState; // in default the robot work individually
-	private int numOfTeam; // 1 refers to one robot carry one item, 2 means they
-							
-
-	// work in pairs, 3 means three robots are working together
-	private int timer;	// a timer for slowing the speed when robots are working in teams
-	
-	private int deliveryCounter;
-
-	/**
-	 * Initiates the robot's location at the start to be at the mailroom also
-	 * set it to be waiting for mail.
-	 * 
-	 * @param behaviour
-	 *            governs selection of mail items for delivery and behaviour on
-	 *            priority arrivals
-	 * @param delivery
-	 *            governs the final delivery
-	 * @param mailPool
-	 *            is the source of mail items
-	 */
-	public Robot(IMailDelivery delivery, IMailPool mailPool) {
-		id = "R" + hashCode();
-		current_state = RobotState.RETURNING;
-		current_floor = Building.MAILROOM_LOCATION;
-		this.delivery = delivery;
-		this.mailPool = mailPool;
-		this.receivedDispatch = false;
-		this.deliveryCounter = 0;
-		this.teamState = false;
-		this.numOfTeam = 1;	// in default the robot work individually
-		this.timer = 1;	// default value
-	}
-
-	public void dispatch() {
-		receivedDispatch = true;
-	}
-
-	/**
-	 * This is called on every time step
-	 * 
-	 * @throws ExcessiveDeliveryException
-	 *             if robot delivers more than the capacity of the tube without
-	 *             refilling
-	 */
-	public void step() throws ExcessiveDeliveryException {
-		switch (current_state) {
-		/**
-		 * This state is triggered when the robot is returning to the mailroom
-		 * after a delivery
-		 */
-		case RETURNING:
-			/**
-			 * If its current position is at the mailroom, then the robot should
-			 * change state
-			 */
-			if (current_floor == Building.MAILROOM_LOCATION) {
-				if (tube != null) {
-					mailPool.addToPool(tube);
-					System.out.printf("T: %3d > old addToPool [%s]%n", Clock.Time(), tube.toString());
-					tube = null;
-				}
-				/** Tell the sorter the robot is ready */
-				mailPool.registerWaiting(this);
-				changeState(RobotState.WAITING);
-			} else {
-				/**
-				 * If the robot is not at the mailroom floor yet, then move
-				 * towards it!
-				 */
-				moveTowards(Building.MAILROOM_LOCATION);
-				break;
-			}
-		case WAITING:
-			/**
-			 * If the StorageTube is ready and the Robot is waiting in the
-			 * mailroom then start the delivery
-			 */
-			if (!isEmpty() && receivedDispatch) {
-				receivedDispatch = false;
-				deliveryCounter = 0; // reset delivery counter
-				setRoute();
-				changeState(RobotState.DELIVERING);
-			}
-			break;
-		case DELIVERING:
-			
-			if (current_floor == destination_floor) { // If already here drop
-														// off either way
-				/** Delivery complete, report this to the simulator! */
-				
-				delivery.deliver(deliveryItem, numOfTeam);
-				
-				// if robots are in a team state, reset it after they unload the items
-				setTeamState(false);
-				
-				deliveryItem = null;
-				deliveryCounter++;
-				if (deliveryCounter > 2) { // Implies a simulation bug
-					throw new ExcessiveDeliveryException();
-				}
-				/**
-				 * Check if want to return, i.e. if there is no item in the tube
-				 */
-				if (tube == null || teamState == true) {
-					changeState(RobotState.RETURNING);
-				} else {
-					/**
-					 * If there is another item, set the robot's route to the
-					 * location to deliver the item
-					 */
-					deliveryItem = tube;
-					tube = null;
-					setRoute();
-					changeState(RobotState.DELIVERING);
-				}
-			} else {
-				/** The robot is not at the destination yet, move towards it! */
-				moveTowards(destination_floor);
-			}
-			break;
-		}
-	}
-
-	/**
-	 * Sets the route for the robot
-	 */
-	private void setRoute() {
-		/** Set the destination floor */
-		destination_floor = deliveryItem.getDestFloor();
-	}
-
-	/**
-	 * Generic function that moves the robot towards the destination
-	 * In group working case, they move 1/3 speed then normal case
-	 * 
-	 * @param destination
-	 *            the floor towards which the robot is moving
-	 */
-	private void moveTowards(int destination) {
-
-		if (!teamState|| this.timer == 3) {
-			timer = 1;
-			if (current_floor < destination) {
-				current_floor++;
-			} else {
-				current_floor--;
-			}
-		} else {
-			timer++;	// increase the timer
-		}
-
-	}
-
-	private String getIdTube() {
-		return String.format("%s(%1d)", id, (tube == null ? 0 : 1));
-	}
-
-	/**
-	 * Prints out the change in state
-	 * 
-	 * @param nextState
-	 *            the state to which the robot is transitioning
-	 */
-	private void changeState(RobotState nextState) {
-		assert (!(deliveryItem == null && tube != null));
-		if (current_state != nextState) {
-			System.out.printf("T: %3d > %7s changed from %s to %s%n", Clock.Time(), getIdTube(), current_state,
-					nextState);
-		}
-		current_state = nextState;
-		if (nextState == RobotState.DELIVERING) {
-			System.out.printf("T: %3d > %7s-> [%s]%n", Clock.Time(), getIdTube(), deliveryItem.toString());
-		}
-	}
-
-	public MailItem getTube() {
-		return tube;
-	}
-
-	static private int count = 0;
-	static private Map<Integer, Integer> hashMap = new TreeMap<Integer, Integer>();
-
-	@Override
-	public int hashCode() {
-		Integer hash0 = super.hashCode();
-		Integer hash = hashMap.get(hash0);
-		if (hash == null) {
-			hash = count++;
-			hashMap.put(hash0, hash);
-		}
-		return hash;
-	}
-
-	public boolean isEmpty() {
-		return (deliveryItem == null && tube == null);
-	}
-
-	public void addToHand(MailItem mailItem) throws ItemTooHeavyException {
-		assert (deliveryItem == null);
-		deliveryItem = mailItem;
-		if (deliveryItem.weight > INDIVIDUAL_MAX_WEIGHT && teamState == false)
-			throw new ItemTooHeavyException();
-	}
-
-	public void addToTube(MailItem mailItem) throws ItemTooHeavyException {
-		assert (tube == null);
-		tube = mailItem;
-		if (tube.weight > INDIVIDUAL_MAX_WEIGHT)
-			throw new ItemTooHeavyException();
-	}
-
-	public void setTeamState(boolean state) {
-		this.teamState = state;
-	}
-	
-	public boolean getTeamState() {
-		return this.teamState;
-	}
-	
-	public int getNumOfTeam() {
-		return numOfTeam;
-	}
-
-	public void setNumOfTeam(int numOfTeam) {
-		this.numOfTeam = numOfTeam;
-	}
-
-}
+package automail;
+
+import exceptions.ExcessiveDeliveryException;
+import exceptions.ItemTooHeavyException;
+import strategies.IMailPool;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * The robot delivers mail!
+ */
+public class Robot {
+
+	static public final int INDIVIDUAL_MAX_WEIGHT = 2000;
+	static public final int PAIR_MAX_WEIGHT = 2600;
+	static public final int TRIPLE_MAX_WEIGHT = 3000;
+
+	IMailDelivery delivery;
+	EventLog log;
+	protected final String id;
+	private final int number;
+
+	/** Possible states the robot can be in */
+	public enum RobotState {
+		DELIVERING, WAITING, RETURNING
+	}
+
+	public RobotState current_state;
+	private int current_floor;
+	private int destination_floor;
+	private final int mailroom; // the floor of the mailroom the robot works from
+	private IMailPool mailPool;
+	private boolean receivedDispatch;
+
+	private MailItem deliveryItem = null;
+	private MailItem tube = null;
+	
+	private boolean teamState; // in default the robot work individually
+	private int numOfTeam; // 1 refers to one robot carry one item, 2 means they
+							
+
+	// work in pairs, 3 means three robots are working together
+	private int timer;	// a timer for slowing the speed when robots are working in teams
+	
+	private int deliveryCounter;
+
+	/**
+	 * Initiates the robot's location at the start to be at the mailroom also
+	 * set it to be waiting for mail.
+	 * 
+	 * @param behaviour
+	 *            governs selection of mail items for delivery and behaviour on
+	 *            priority arrivals
+	 * @param delivery
+	 *            governs the final delivery
+	 * @param mailPool
+	 *            is the source of mail items
+	 * @param log
+	 *            is where the robot reports its progress
+	 * @param number
+	 *            identifies the robot within its fleet
+	 * @param mailroom
+	 *            the floor of the mailroom that mailPool belongs to
+	 */
+	public Robot(IMailDelivery delivery, IMailPool mailPool, EventLog log, int number, int mailroom) {
+		id = "R" + number;
+		this.number = number;
+		current_state = RobotState.RETURNING;
+		this.mailroom = mailroom;
+		current_floor = mailroom;
+		this.delivery = delivery;
+		this.mailPool = mailPool;
+		this.log = log;
+		this.receivedDispatch = false;
+		this.deliveryCounter = 0;
+		this.teamState = false;
+		this.numOfTeam = 1;	// in default the robot work individually
+		this.timer = 1;	// default value
+	}
+
+	public void dispatch() {
+		receivedDispatch = true;
+	}
+
+	/**
+	 * This is called on every time step
+	 * 
+	 * @throws ExcessiveDeliveryException
+	 *             if robot delivers more than the capacity of the tube without
+	 *             refilling
+	 */
+	public void step() throws ExcessiveDeliveryException, ItemTooHeavyException {
+		switch (current_state) {
+		/**
+		 * This state is triggered when the robot is returning to the mailroom
+		 * after a delivery
+		 */
+		case RETURNING:
+			/**
+			 * If its current position is at the mailroom, then the robot should
+			 * change state
+			 */
+			if (current_floor == mailroom) {
+				if (tube != null) {
+					mailPool.addToPool(tube);
+					log.returnedToPool(tube);
+					tube = null;
+				}
+				/** Tell the sorter the robot is ready */
+				mailPool.registerWaiting(this);
+				changeState(RobotState.WAITING);
+			} else {
+				/**
+				 * If the robot is not at the mailroom floor yet, then move
+				 * towards it!
+				 */
+				moveTowards(mailroom);
+				break;
+			}
+		case WAITING:
+			/**
+			 * If the StorageTube is ready and the Robot is waiting in the
+			 * mailroom then start the delivery
+			 */
+			if (!isEmpty() && receivedDispatch) {
+				receivedDispatch = false;
+				deliveryCounter = 0; // reset delivery counter
+				setRoute();
+				changeState(RobotState.DELIVERING);
+			}
+			break;
+		case DELIVERING:
+			
+			if (current_floor == destination_floor) { // If already here drop
+														// off either way
+				/** Delivery complete, report this to the simulator! */
+				
+				delivery.deliver(deliveryItem, numOfTeam);
+				
+				// if robots are in a team state, reset it after they unload the items
+				setTeamState(false);
+				
+				deliveryItem = null;
+				deliveryCounter++;
+				if (deliveryCounter > 2) { // Implies a simulation bug
+					throw new ExcessiveDeliveryException();
+				}
+				/**
+				 * Check if want to return, i.e. if there is no item in the tube
+				 */
+				if (tube == null || teamState == true) {
+					changeState(RobotState.RETURNING);
+				} else {
+					/**
+					 * If there is another item, set the robot's route to the
+					 * location to deliver the item
+					 */
+					deliveryItem = tube;
+					tube = null;
+					setRoute();
+					changeState(RobotState.DELIVERING);
+				}
+			} else {
+				/** The robot is not at the destination yet, move towards it! */
+				moveTowards(destination_floor);
+			}
+			break;
+		}
+	}
+
+	/**
+	 * Sets the route for the robot
+	 */
+	private void setRoute() {
+		/** Set the destination floor */
+		destination_floor = deliveryItem.getDestFloor();
+	}
+
+	/**
+	 * Generic function that moves the robot towards the destination
+	 * In group working case, they move 1/3 speed then normal case
+	 * 
+	 * @param destination
+	 *            the floor towards which the robot is moving
+	 */
+	private void moveTowards(int destination) {
+
+		if (!teamState|| this.timer == 3) {
+			timer = 1;
+			if (current_floor < destination) {
+				current_floor++;
+			} else {
+				current_floor--;
+			}
+		} else {
+			timer++;	// increase the timer
+		}
+
+	}
+
+	int getNumber() {
+		return number;
+	}
+
+	String getIdTube() {
+		return String.format("%s(%1d)", id, (tube == null ? 0 : 1));
+	}
+
+	/**
+	 * Prints out the change in state
+	 * 
+	 * @param nextState
+	 *            the state to which the robot is transitioning
+	 */
+	private void changeState(RobotState nextState) {
+		assert (!(deliveryItem == null && tube != null));
+		if (current_state != nextState) {
+			log.stateChanged(this, current_state, nextState);
+		}
+		current_state = nextState;
+		if (nextState == RobotState.DELIVERING) {
+			log.dispatched(this, deliveryItem);
+		}
+	}
+
+	public MailItem getTube() {
+		return tube;
+	}
+
+	public boolean isEmpty() {
+		return (deliveryItem == null && tube == null);
+	}
+
+	public void addToHand(MailItem mailItem) throws ItemTooHeavyException {
+		assert (deliveryItem == null);
+		deliveryItem = mailItem;
+		log.loaded(this, mailItem, false);
+		if (deliveryItem.weight > INDIVIDUAL_MAX_WEIGHT && teamState == false)
+			throw new ItemTooHeavyException();
+	}
+
+	public void addToTube(MailItem mailItem) throws ItemTooHeavyException {
+		assert (tube == null);
+		tube = mailItem;
+		log.loaded(this, mailItem, true);
+		if (tube.weight > INDIVIDUAL_MAX_WEIGHT)
+			throw new ItemTooHeavyException();
+	}
+
+	/**
+	 * Saves everything about the robot that changes as it works
+	 */
+	void writeState(DataOutput out) throws IOException {
+		out.writeByte(current_state.ordinal());
+		out.writeInt(current_floor);
+		out.writeInt(destination_floor);
+		out.writeBoolean(receivedDispatch);
+		Snapshot.writeItem(out, deliveryItem);
+		Snapshot.writeItem(out, tube);
+		out.writeBoolean(teamState);
+		out.writeByte(numOfTeam);
+		out.writeByte(timer);
+		out.writeByte(deliveryCounter);
+	}
+
+	/**
+	 * Restores the state saved by {@link #writeState}
+	 * @param items the items restored so far by number, so team members share one item
+	 */
+	void readState(DataInput in, Map<Integer, MailItem> items) throws IOException {
+		current_state = RobotState.values()[in.readByte()];
+		current_floor = in.readInt();
+		destination_floor = in.readInt();
+		receivedDispatch = in.readBoolean();
+		deliveryItem = Snapshot.readItem(in, items);
+		tube = Snapshot.readItem(in, items);
+		teamState = in.readBoolean();
+		numOfTeam = in.readByte();
+		timer = in.readByte();
+		deliveryCounter = in.readByte();
+	}
+
+	public void setTeamState(boolean state) {
+		this.teamState = state;
+	}
+	
+	public boolean getTeamState() {
+		return this.teamState;
+	}
+	
+	public int getNumOfTeam() {
+		return numOfTeam;
+	}
+
+	public void setNumOfTeam(int numOfTeam) {
+		this.numOfTeam = numOfTeam;
+	}
+
+}
@@ -0,0 +1,296 @@
+package automail;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Map;
+
+import automail.Robot.RobotState;
+import exceptions.ExcessiveDeliveryException;
+import exceptions.ItemTooHeavyException;
+import strategies.IMailPool;
+
+/**
+ * A building's robots as parallel arrays of primitives rather than one object each, for
+ * very large fleets. Each time step first moves every travelling robot in one loop over
+ * the arrays with no branches to mispredict, then does the rest of Robot.step for the few
+ * robots that arrived somewhere or were dispatched, in robot order. Moving has no effect on
+ * anything but the robot itself, so this gives exactly the events of stepping each Robot in
+ * turn. The pools still see a Robot for each robot: a FleetRobot whose state lives here.
+ */
+public class RobotFleet {
+
+	private static final int DELIVERING = RobotState.DELIVERING.ordinal();
+	private static final int WAITING = RobotState.WAITING.ordinal();
+	private static final int RETURNING = RobotState.RETURNING.ordinal();
+	private static final RobotState[] STATES = RobotState.values();
+
+	private final int size;
+	final int[] state;
+	final int[] floor;
+	final int[] destination;
+	final int[] mailroom;
+	final int[] teamState; // 1 while carrying an item with a team
+	final int[] numOfTeam;
+	final int[] timer; // slows teams to a third of the speed
+	final int[] dispatched; // 1 once the pool has loaded the robot
+	final int[] deliveryCounter;
+	final MailItem[] hand;
+	final MailItem[] tube;
+
+	private final FleetRobot[] robots;
+	private final IMailPool[] mailPools;
+	private final IMailDelivery delivery;
+	private final EventLog log;
+	/** The robots that need more than a move this time step */
+	private final int[] events;
+
+	/**
+	 * @param mailPools the pool each robot works from
+	 * @param mailrooms the floor of each robot's mailroom
+	 */
+	public RobotFleet(IMailDelivery delivery, IMailPool[] mailPools, EventLog log, int[] mailrooms) {
+		size = mailPools.length;
+		state = new int[size];
+		floor = new int[size];
+		destination = new int[size];
+		mailroom = mailrooms.clone();
+		teamState = new int[size];
+		numOfTeam = new int[size];
+		timer = new int[size];
+		dispatched = new int[size];
+		deliveryCounter = new int[size];
+		hand = new MailItem[size];
+		tube = new MailItem[size];
+		events = new int[size];
+		this.mailPools = mailPools.clone();
+		this.delivery = delivery;
+		this.log = log;
+		robots = new FleetRobot[size];
+		for (int i = 0; i < size; i++) {
+			state[i] = RETURNING;
+			floor[i] = mailroom[i];
+			numOfTeam[i] = 1;
+			timer[i] = 1;
+			robots[i] = new FleetRobot(this, i, delivery, mailPools[i], log, mailroom[i]);
+		}
+	}
+
+	/**
+	 * @return the robot the pools load, backed by this fleet
+	 */
+	public Robot getRobot(int i) {
+		return robots[i];
+	}
+
+	/**
+	 * Steps every robot, with the same events in the same order as stepping each Robot
+	 */
+	public void step() throws ExcessiveDeliveryException, ItemTooHeavyException {
+		int count = 0;
+		for (int i = 0; i < size; i++) {
+			int target = state[i] == RETURNING ? mailroom[i] : destination[i];
+			int travelling = (state[i] != WAITING) & (floor[i] != target) ? 1 : 0;
+			int go = (teamState[i] == 0) | (timer[i] == 3) ? 1 : 0;
+			floor[i] += travelling * go * Integer.signum(target - floor[i]);
+			timer[i] += travelling * (go * (1 - timer[i]) + 1 - go);
+			// everything else needs attention, apart from robots still waiting for a load
+			int idle = (state[i] == WAITING) & (dispatched[i] == 0) ? 1 : 0;
+			events[count] = i;
+			count += (1 - travelling) & (1 - idle);
+		}
+		for (int e = 0; e < count; e++) {
+			arrive(events[e]);
+		}
+	}
+
+	/**
+	 * One robot's time step on its own, as Robot.step
+	 */
+	void step(int i) throws ExcessiveDeliveryException, ItemTooHeavyException {
+		int target = state[i] == RETURNING ? mailroom[i] : destination[i];
+		if (state[i] != WAITING && floor[i] != target) {
+			moveTowards(i, target);
+		} else {
+			arrive(i);
+		}
+	}
+
+	/**
+	 * The part of Robot.step for a robot that is not travelling
+	 */
+	private void arrive(int i) throws ExcessiveDeliveryException, ItemTooHeavyException {
+		if (state[i] == RETURNING) {
+			if (tube[i] != null) {
+				mailPools[i].addToPool(tube[i]);
+				log.returnedToPool(tube[i]);
+				tube[i] = null;
+			}
+			/** Tell the sorter the robot is ready */
+			mailPools[i].registerWaiting(robots[i]);
+			changeState(i, WAITING);
+		}
+		if (state[i] == WAITING) {
+			if (!isEmpty(i) && dispatched[i] == 1) {
+				dispatched[i] = 0;
+				deliveryCounter[i] = 0;
+				destination[i] = hand[i].getDestFloor();
+				changeState(i, DELIVERING);
+			}
+		} else if (floor[i] == destination[i]) { // delivering, and here
+			delivery.deliver(hand[i], numOfTeam[i]);
+			teamState[i] = 0;
+			hand[i] = null;
+			deliveryCounter[i]++;
+			if (deliveryCounter[i] > 2) { // Implies a simulation bug
+				throw new ExcessiveDeliveryException();
+			}
+			if (tube[i] == null) {
+				changeState(i, RETURNING);
+			} else {
+				hand[i] = tube[i];
+				tube[i] = null;
+				destination[i] = hand[i].getDestFloor();
+				changeState(i, DELIVERING);
+			}
+		} else {
+			moveTowards(i, destination[i]);
+		}
+	}
+
+	private void moveTowards(int i, int target) {
+		if (teamState[i] == 0 || timer[i] == 3) {
+			timer[i] = 1;
+			floor[i] += floor[i] < target ? 1 : -1;
+		} else {
+			timer[i]++;
+		}
+	}
+
+	private void changeState(int i, int next) {
+		if (state[i] != next) {
+			log.stateChanged(robots[i], STATES[state[i]], STATES[next]);
+		}
+		state[i] = next;
+		if (next == DELIVERING) {
+			log.dispatched(robots[i], hand[i]);
+		}
+	}
+
+	/**
+	 * Adds the number of robots in each RobotState, by ordinal
+	 */
+	public void countStates(int[] counts) {
+		for (int i = 0; i < size; i++) counts[state[i]]++;
+	}
+
+	boolean isEmpty(int i) {
+		return hand[i] == null && tube[i] == null;
+	}
+
+	/**
+	 * A Robot whose state is kept in the fleet's arrays
+	 */
+	static class FleetRobot extends Robot {
+
+		private final RobotFleet fleet;
+		private final int i;
+
+		FleetRobot(RobotFleet fleet, int i, IMailDelivery delivery, IMailPool mailPool, EventLog log, int mailroom) {
+			super(delivery, mailPool, log, i, mailroom);
+			this.fleet = fleet;
+			this.i = i;
+		}
+
+		@Override
+		public void dispatch() {
+			fleet.dispatched[i] = 1;
+		}
+
+		@Override
+		public void step() throws ExcessiveDeliveryException, ItemTooHeavyException {
+			fleet.step(i);
+		}
+
+		@Override
+		String getIdTube() {
+			return String.format("%s(%1d)", id, (fleet.tube[i] == null ? 0 : 1));
+		}
+
+		@Override
+		public MailItem getTube() {
+			return fleet.tube[i];
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return fleet.isEmpty(i);
+		}
+
+		@Override
+		public void addToHand(MailItem mailItem) throws ItemTooHeavyException {
+			assert (fleet.hand[i] == null);
+			fleet.hand[i] = mailItem;
+			log.loaded(this, mailItem, false);
+			if (mailItem.getWeight() > INDIVIDUAL_MAX_WEIGHT && fleet.teamState[i] == 0)
+				throw new ItemTooHeavyException();
+		}
+
+		@Override
+		public void addToTube(MailItem mailItem) throws ItemTooHeavyException {
+			assert (fleet.tube[i] == null);
+			fleet.tube[i] = mailItem;
+			log.loaded(this, mailItem, true);
+			if (mailItem.getWeight() > INDIVIDUAL_MAX_WEIGHT)
+				throw new ItemTooHeavyException();
+		}
+
+		@Override
+		public void setTeamState(boolean state) {
+			fleet.teamState[i] = state ? 1 : 0;
+		}
+
+		@Override
+		public boolean getTeamState() {
+			return fleet.teamState[i] == 1;
+		}
+
+		@Override
+		public int getNumOfTeam() {
+			return fleet.numOfTeam[i];
+		}
+
+		@Override
+		public void setNumOfTeam(int numOfTeam) {
+			fleet.numOfTeam[i] = numOfTeam;
+		}
+
+		@Override
+		void writeState(DataOutput out) throws IOException {
+			out.writeByte(fleet.state[i]);
+			out.writeInt(fleet.floor[i]);
+			out.writeInt(fleet.destination[i]);
+			out.writeBoolean(fleet.dispatched[i] == 1);
+			Snapshot.writeItem(out, fleet.hand[i]);
+			Snapshot.writeItem(out, fleet.tube[i]);
+			out.writeBoolean(fleet.teamState[i] == 1);
+			out.writeByte(fleet.numOfTeam[i]);
+			out.writeByte(fleet.timer[i]);
+			out.writeByte(fleet.deliveryCounter[i]);
+		}
+
+		@Override
+		void readState(DataInput in, Map<Integer, MailItem> items) throws IOException {
+			fleet.state[i] = in.readByte();
+			fleet.floor[i] = in.readInt();
+			fleet.destination[i] = in.readInt();
+			fleet.dispatched[i] = in.readBoolean() ? 1 : 0;
+			fleet.hand[i] = Snapshot.readItem(in, items);
+			fleet.tube[i] = Snapshot.readItem(in, items);
+			fleet.teamState[i] = in.readBoolean() ? 1 : 0;
+			fleet.numOfTeam[i] = in.readByte();
+			fleet.timer[i] = in.readByte();
+			fleet.deliveryCounter[i] = in.readByte();
+		}
+	}
+}
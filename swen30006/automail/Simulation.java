@@ -1,170 +1,508 @@
-package automail;
-
-import exceptions.ExcessiveDeliveryException;
-import exceptions.ItemTooHeavyException;
-import exceptions.MailAlreadyDeliveredException;
-import strategies.Automail;
-import strategies.IMailPool;
-import strategies.MailPool;
-
-import java.io.FileReader;
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Properties;
-
-/**
- * This class simulates the behaviour of AutoMail
- */
-public class Simulation {
-
-	/** Constant for the mail generator */
-	private static int MAIL_TO_CREATE;
-	private static int MAIL_MAX_WEIGHT;
-
-	private static ArrayList<MailItem> MAIL_DELIVERED;
-	private static double total_score = 0;
-
-	public static void main(String[] args)
-			throws IOException, InstantiationException, IllegalAccessException, ClassNotFoundException {
-		Properties automailProperties = new Properties();
-		// Default properties
-		// automailProperties.setProperty("Robots",
-		// "Big,Careful,Standard,Weak");
-		automailProperties.setProperty("Robots", "Standard");
-		automailProperties.setProperty("MailPool", "strategies.SimpleMailPool");
-		automailProperties.setProperty("Floors", "10");
-		automailProperties.setProperty("Fragile", "false");
-		automailProperties.setProperty("Mail_to_Create", "80");
-		automailProperties.setProperty("Last_Delivery_Time", "100");
-
-		// Read properties
-		FileReader inStream = null;
-		try {
-			inStream = new FileReader("automail.properties");
-			automailProperties.load(inStream);
-		} finally {
-			if (inStream != null) {
-				inStream.close();
-			}
-		}
-
-		// Seed
-		String seedProp = automailProperties.getProperty("Seed");
-		// Floors
-		Building.FLOORS = Integer.parseInt(automailProperties.getProperty("Floors"));
-		System.out.printf("Floors: %5d%n", Building.FLOORS);
-		// Fragile
-		boolean fragile = Boolean.parseBoolean(automailProperties.getProperty("Fragile"));
-		System.out.printf("Fragile: %5b%n", fragile);
-		// Mail_to_Create
-		MAIL_TO_CREATE = Integer.parseInt(automailProperties.getProperty("Mail_to_Create"));
-		System.out.printf("Mail_to_Create: %5d%n", MAIL_TO_CREATE);
-		// Mail_to_Create
-		MAIL_MAX_WEIGHT = Integer.parseInt(automailProperties.getProperty("Mail_Max_Weight"));
-		System.out.printf("Mail_Max_Weight: %5d%n", MAIL_MAX_WEIGHT);
-		// Last_Delivery_Time
-		Clock.LAST_DELIVERY_TIME = Integer.parseInt(automailProperties.getProperty("Last_Delivery_Time"));
-		System.out.printf("Last_Delivery_Time: %5d%n", Clock.LAST_DELIVERY_TIME);
-		// Robots
-		int robots = Integer.parseInt(automailProperties.getProperty("Robots"));
-		System.out.print("Robots: ");
-		System.out.println(robots);
-		assert (robots > 0);
-		// MailPool
-		IMailPool mailPool = new MailPool(robots);
-
-		// End properties
-
-		MAIL_DELIVERED = new ArrayList<MailItem>();
-
-		/** Used to see whether a seed is initialized or not */
-		HashMap<Boolean, Integer> seedMap = new HashMap<>();
-
-		/** Read the first argument and save it as a seed if it exists */
-		if (args.length == 0) { // No arg
-			if (seedProp == null) { // and no property
-				seedMap.put(false, 0); // so randomise
-			} else { // Use property seed
-				seedMap.put(true, Integer.parseInt(seedProp));
-			}
-		} else { // Use arg seed - overrides property
-			seedMap.put(true, Integer.parseInt(args[0]));
-		}
-		Integer seed = seedMap.get(true);
-		System.out.printf("Seed: %s%n", seed == null ? "null" : seed.toString());
-		Automail automail = new Automail(mailPool, new ReportDelivery(), robots);
-		MailGenerator mailGenerator = new MailGenerator(MAIL_TO_CREATE, MAIL_MAX_WEIGHT, automail.mailPool, seedMap);
-
-		/** Initiate all the mail */
-		mailGenerator.generateAllMail();
-		// PriorityMailItem priority; // Not used in this version
-		while (MAIL_DELIVERED.size() != mailGenerator.MAIL_TO_CREATE) {
-
-			// System.out.printf("Delivered: %4d; Created: %4d%n",
-			// MAIL_DELIVERED.size(), mailGenerator.MAIL_TO_CREATE);
-			mailGenerator.step();
-			try {
-				automail.mailPool.step();
-				for (int i = 0; i < robots; i++)
-					automail.robots[i].step();
-			} catch (ExcessiveDeliveryException | ItemTooHeavyException e) {
-				e.printStackTrace();
-				System.out.println("Simulation unable to complete.");
-				System.exit(0);
-			}
-			Clock.Tick();
-		}
-		printResults();
-	}
-
-	static class ReportDelivery implements IMailDelivery {
-		int count = 0;	// a counter is used when robots working in teams
-
-		/** Confirm the delivery and calculate the total score */
-		public void deliver(MailItem deliveryItem, int numsOfTeam) {
-			if (!MAIL_DELIVERED.contains(deliveryItem)) {
-				if(numsOfTeam == 1){ // means only one robot is delivering this item
-					MAIL_DELIVERED.add(deliveryItem);
-					System.out.printf("T: %3d > Delivered(%4d) [%s]%n", Clock.Time(), MAIL_DELIVERED.size(), deliveryItem.toString());
-					// Calculate delivery score
-					total_score += calculateDeliveryScore(deliveryItem);
-				}else {
-					count ++;	// this item is delivered by multiple robots, wait other robots to unload the item
-					if (count == numsOfTeam) { // all robots arrived
-						count = 0;	// reset counter
-						MAIL_DELIVERED.add(deliveryItem);
-						System.out.printf("T: %3d > Delivered(%4d) [%s]%n", Clock.Time(), MAIL_DELIVERED.size(), deliveryItem.toString());
-						// Calculate delivery score
-						total_score += calculateDeliveryScore(deliveryItem);
-					}
-				}
-			} else {
-				try {
-					throw new MailAlreadyDeliveredException();
-				} catch (MailAlreadyDeliveredException e) {
-					e.printStackTrace();
-				}
-			}
-		}
-
-	}
-
-	private static double calculateDeliveryScore(MailItem deliveryItem) {
-		// Penalty for longer delivery times
-		final double penalty = 1.2;
-		double priority_weight = 0;
-		// Take (delivery time - arrivalTime)**penalty *
-		// (1+sqrt(priority_weight))
-		if (deliveryItem instanceof PriorityMailItem) {
-			priority_weight = ((PriorityMailItem) deliveryItem).getPriorityLevel();
-		}
-		return Math.pow(Clock.Time() - deliveryItem.getArrivalTime(), penalty) * (1 + Math.sqrt(priority_weight));
-	}
-
-	public static void printResults() {
-		System.out.println("T: " + Clock.Time() + " | Simulation complete!");
-		System.out.println("Final Delivery time: " + Clock.Time());
-		System.out.printf("Final Score: %.2f%n", total_score);
-	}
-}
+package automail;
+
+import exceptions.ExcessiveDeliveryException;
+import exceptions.ItemTooHeavyException;
+import exceptions.MailAlreadyDeliveredException;
+import scoring.ScoringPipeline;
+import strategies.Automail;
+import strategies.IMailPool;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class simulates the behaviour of AutoMail
+ */
+public class Simulation {
+
+	private final Building building;
+	private final Clock clock;
+	private final EventLog log;
+	/** The digest of every event, null unless the configuration asks for one */
+	private final TraceDigest trace;
+	private Automail automail;
+	/** The mail generator, or the arrival log being replayed */
+	private final MailSource mailSource;
+	private final ReportDelivery delivery;
+	/** Where measurements go every few time steps, null if nowhere */
+	private TimeSeries series;
+	/** Measures continuous arrivals, null when all the mail is generated up front */
+	private final SteadyState steadyState;
+
+	/** The numbers of the mail items delivered so far */
+	private final BitSet mailDelivered;
+	private int deliveredCount = 0;
+	/** Scores the deliveries, the automail score and any other objectives configured */
+	private final ScoringPipeline scoring;
+	/** The sum of every delivered item's wait from arrival to delivery */
+	private long total_wait = 0;
+
+	public static void main(String[] args)
+			throws IOException, InstantiationException, IllegalAccessException, ClassNotFoundException {
+		Configuration config = Configuration.load("automail.properties");
+
+		// Floors
+		System.out.printf("Floors: %5d%n", config.floors);
+		// Fragile
+		System.out.printf("Fragile: %5b%n", config.fragile);
+		// Mail_to_Create
+		System.out.printf("Mail_to_Create: %5d%n", config.mailToCreate);
+		// Mail_to_Create
+		System.out.printf("Mail_Max_Weight: %5d%n", config.mailMaxWeight);
+		// Last_Delivery_Time
+		System.out.printf("Last_Delivery_Time: %5d%n", config.lastDeliveryTime);
+		// Robots
+		System.out.print("Robots: ");
+		System.out.println(config.robots);
+		assert (config.robots > 0);
+
+		/** Read the first argument and save it as a seed if it exists - overrides property */
+		if (args.length > 0) {
+			config.seed = Integer.parseInt(args[0]);
+		}
+		System.out.printf("Seed: %s%n", config.seed == null ? "null" : config.seed.toString());
+		Simulation simulation = new Simulation(config, true);
+		simulation.exportSeries(TimeSeries.open(config, simulation.getBuilding()));
+
+		while (!simulation.isComplete()) {
+			try {
+				simulation.step();
+			} catch (ExcessiveDeliveryException | ItemTooHeavyException e) {
+				e.printStackTrace();
+				System.out.println("Simulation unable to complete.");
+				simulation.close();
+				System.exit(0);
+			}
+		}
+		simulation.close();
+		simulation.printResults();
+	}
+
+	/**
+	 * Builds a simulation and generates all of its mail
+	 * @param config the building, fleet and mail settings
+	 * @param verbose whether every event is printed as it happens
+	 */
+	public Simulation(Configuration config, boolean verbose) {
+		building = new Building(config.floors, config.mailroomFloors);
+		clock = new Clock(config.lastDeliveryTime);
+		trace = config.traceDigest ? new TraceDigest() : null;
+		log = new EventLog(clock, verbose, trace);
+
+		mailDelivered = new BitSet();
+		delivery = new ReportDelivery();
+		scoring = new ScoringPipeline(ScoringPipeline.parse(config.objectives), building.MAILROOM_LOCATIONS);
+
+		/** Used to see whether a seed is initialized or not */
+		HashMap<Boolean, Integer> seedMap = new HashMap<>();
+		if (config.seed == null) {
+			seedMap.put(false, 0); // so randomise
+		} else {
+			seedMap.put(true, config.seed);
+		}
+		automail = new Automail(building, clock, delivery, log, config);
+		if (config.arrivalLog != null) {
+			try {
+				mailSource = new ArrivalLog(config.arrivalLog, config.mailMaxWeight, building, clock, log, automail);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			steadyState = null;
+		} else if (config.arrivalRate > 0) {
+			mailSource = new MailGenerator(config.arrivalRate, config.mailMaxWeight, building, clock, log,
+					automail, seedMap);
+			steadyState = new SteadyState(config.steadyWindow);
+		} else {
+			MailGenerator mailGenerator = new MailGenerator(config.mailToCreate, config.mailMaxWeight, building,
+					clock, log, automail, seedMap);
+			mailSource = mailGenerator;
+			steadyState = null;
+
+			/** Initiate all the mail */
+			if (config.generationThreads > 0) {
+				mailGenerator.generateAllMailParallel(config.generationThreads, config.generationBlock, config.seed);
+			} else {
+				mailGenerator.generateAllMail();
+			}
+		}
+	}
+
+	/**
+	 * Resumes a simulation saved by {@link #writeState}. The configuration must describe the
+	 * same building; it may have more robots than were saved, the extra robots start fresh.
+	 * @param mail the mail still to arrive if the snapshot is a checkpoint sharing it, or null
+	 */
+	Simulation(Configuration config, boolean verbose, DataInput in, Map<Integer, ArrayList<MailItem>> mail)
+			throws IOException {
+		building = new Building(config.floors, config.mailroomFloors);
+		clock = new Clock(config.lastDeliveryTime);
+		trace = config.traceDigest ? new TraceDigest() : null;
+		log = new EventLog(clock, verbose, trace);
+		mailDelivered = new BitSet();
+		delivery = new ReportDelivery();
+		scoring = new ScoringPipeline(ScoringPipeline.parse(config.objectives), building.MAILROOM_LOCATIONS);
+		automail = new Automail(building, clock, delivery, log, config);
+
+		if (in.readInt() != Snapshot.MAGIC || in.readInt() != Snapshot.VERSION) {
+			throw new IOException("Not a simulation snapshot");
+		}
+		clock.setTime(in.readInt());
+		int floors = in.readInt();
+		int[] mailrooms = new int[in.readInt()];
+		for (int k = 0; k < mailrooms.length; k++) mailrooms[k] = in.readInt();
+		int robots = in.readInt();
+		if (floors != building.FLOORS || !Arrays.equals(mailrooms, building.MAILROOM_LOCATIONS)) {
+			throw new IllegalArgumentException("The snapshot was taken in a different building");
+		}
+		if (robots > automail.robots.length) {
+			throw new IllegalArgumentException(
+					"The snapshot has " + robots + " robots but the configuration only " + automail.robots.length);
+		}
+
+		Map<Integer, MailItem> items = new HashMap<>();
+		mailSource = in.readBoolean() ? new ArrivalLog(in, config.mailMaxWeight, building, clock, log, automail)
+				: new MailGenerator(in, config.mailMaxWeight, building, clock, log, automail, items, mail);
+		steadyState = mailSource.isContinuous()
+				? new SteadyState(config.steadyWindow) : null;
+		for (IMailPool mailPool : automail.mailPools) {
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				try {
+					mailPool.addToPool(Snapshot.readItem(in, items));
+				} catch (ItemTooHeavyException e) {
+					throw new IllegalArgumentException("The snapshot has items too heavy for the configured robots", e);
+				}
+			}
+			int waiting = in.readInt();
+			for (int i = 0; i < waiting; i++) mailPool.registerWaiting(automail.robots[in.readInt()]);
+			String kind = in.readUTF();
+			byte[] state = new byte[in.readInt()];
+			in.readFully(state);
+			// a pool of another kind starts afresh
+			if (kind.equals(mailPool.getClass().getName())) {
+				mailPool.readState(new DataInputStream(new ByteArrayInputStream(state)));
+			}
+		}
+		for (int i = 0; i < robots; i++) automail.robots[i].readState(in, items);
+
+		deliveredCount = in.readInt();
+		scoring.readState(in);
+		total_wait = in.readLong();
+		long[] words = new long[in.readInt()];
+		for (int i = 0; i < words.length; i++) words[i] = in.readLong();
+		mailDelivered.or(BitSet.valueOf(words));
+		int teams = in.readInt();
+		for (int i = 0; i < teams; i++) delivery.teamArrivals.put(Snapshot.readItem(in, items), in.readInt());
+	}
+
+	/**
+	 * Saves the clock, the generator, every pool, robot and the delivery ledger
+	 */
+	void writeState(DataOutput out) throws IOException {
+		writeState(out, true);
+	}
+
+	/**
+	 * @param withMail false to leave out the generated mail still to arrive, for a checkpoint
+	 *        sharing it, see {@link #shareMail}
+	 */
+	void writeState(DataOutput out, boolean withMail) throws IOException {
+		out.writeInt(Snapshot.MAGIC);
+		out.writeInt(Snapshot.VERSION);
+		out.writeInt(clock.Time());
+		out.writeInt(building.FLOORS);
+		out.writeInt(building.MAILROOM_LOCATIONS.length);
+		for (int mailroom : building.MAILROOM_LOCATIONS) out.writeInt(mailroom);
+		out.writeInt(automail.robots.length);
+
+		out.writeBoolean(mailSource instanceof ArrivalLog);
+		if (mailSource instanceof MailGenerator) {
+			((MailGenerator) mailSource).writeState(out, withMail);
+		} else {
+			mailSource.writeState(out);
+		}
+		Map<Robot, Integer> robotIndex = new IdentityHashMap<>();
+		for (int i = 0; i < automail.robots.length; i++) robotIndex.put(automail.robots[i], i);
+		for (IMailPool mailPool : automail.mailPools) {
+			List<MailItem> items = mailPool.getItems();
+			out.writeInt(items.size());
+			for (MailItem mailItem : items) Snapshot.writeItem(out, mailItem);
+			List<Robot> waiting = mailPool.getWaitingRobots();
+			out.writeInt(waiting.size());
+			for (Robot robot : waiting) out.writeInt(robotIndex.get(robot));
+			out.writeUTF(mailPool.getClass().getName());
+			byte[] state = poolState(mailPool);
+			out.writeInt(state.length);
+			out.write(state);
+		}
+		for (Robot robot : automail.robots) robot.writeState(out);
+
+		out.writeInt(deliveredCount);
+		scoring.writeState(out);
+		out.writeLong(total_wait);
+		long[] words = mailDelivered.toLongArray();
+		out.writeInt(words.length);
+		for (long word : words) out.writeLong(word);
+		out.writeInt(delivery.teamArrivals.size());
+		for (Map.Entry<MailItem, Integer> team : delivery.teamArrivals.entrySet()) {
+			Snapshot.writeItem(out, team.getKey());
+			out.writeInt(team.getValue());
+		}
+	}
+
+	/**
+	 * @return what a pool has learned, see IMailPool.writeState
+	 */
+	private static byte[] poolState(IMailPool mailPool) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			mailPool.writeState(out);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * @return the generated mail still to arrive, from now on shared rather than copied by
+	 *         checkpoints, or null if the mail is replayed from a log
+	 */
+	Map<Integer, ArrayList<MailItem>> shareMail() {
+		return mailSource instanceof MailGenerator ? ((MailGenerator) mailSource).shareMail() : null;
+	}
+
+	/**
+	 * Carries on from this time step under a changed configuration, as a simulation resumed
+	 * from a snapshot under it would: new pools take the waiting items and robots, and what
+	 * the old pools learned if of the same kind, and the robots keep their state, any extra
+	 * robots starting fresh. Only the pools' learning and the robots are copied;
+	 * the mail, the ledger and the scoring stay as they are.
+	 * @param config settings for the same building, with at least as many robots
+	 */
+	public void reconfigure(Configuration config) {
+		if (config.floors != building.FLOORS || !Arrays.equals(config.mailroomFloors, building.MAILROOM_LOCATIONS)) {
+			throw new IllegalArgumentException("The configuration is for a different building");
+		}
+		Automail changed = new Automail(building, clock, delivery, log, config);
+		if (automail.robots.length > changed.robots.length) {
+			throw new IllegalArgumentException("The simulation has " + automail.robots.length
+					+ " robots but the configuration only " + changed.robots.length);
+		}
+		Map<Robot, Integer> robotIndex = new IdentityHashMap<>();
+		for (int i = 0; i < automail.robots.length; i++) robotIndex.put(automail.robots[i], i);
+		for (int k = 0; k < automail.mailPools.length; k++) {
+			for (MailItem mailItem : automail.mailPools[k].getItems()) {
+				try {
+					changed.mailPools[k].addToPool(mailItem);
+				} catch (ItemTooHeavyException e) {
+					throw new IllegalArgumentException("Items are waiting that are too heavy for the configured robots", e);
+				}
+			}
+			for (Robot robot : automail.mailPools[k].getWaitingRobots()) {
+				changed.mailPools[k].registerWaiting(changed.robots[robotIndex.get(robot)]);
+			}
+		}
+		// the robots' and pools' few bytes of state, keeping the items teams share
+		Map<Integer, MailItem> items = new HashMap<>();
+		for (MailItem mailItem : delivery.teamArrivals.keySet()) items.put(mailItem.getNumber(), mailItem);
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			try (DataOutputStream out = new DataOutputStream(bytes)) {
+				for (Robot robot : automail.robots) robot.writeState(out);
+			}
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+			for (int i = 0; i < automail.robots.length; i++) changed.robots[i].readState(in, items);
+			for (int k = 0; k < automail.mailPools.length; k++) {
+				if (changed.mailPools[k].getClass() == automail.mailPools[k].getClass()) {
+					changed.mailPools[k].readState(
+							new DataInputStream(new ByteArrayInputStream(poolState(automail.mailPools[k]))));
+				}
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException(e); // cannot happen in memory
+		}
+		automail = changed;
+		if (mailSource instanceof MailGenerator) {
+			((MailGenerator) mailSource).setAutomail(changed);
+		} else {
+			((ArrivalLog) mailSource).setAutomail(changed);
+		}
+	}
+
+	/**
+	 * Advances the simulation by one time step
+	 */
+	public void step() throws ExcessiveDeliveryException, ItemTooHeavyException {
+		mailSource.step();
+		automail.step();
+		automail.stepRobots();
+		if (steadyState != null) {
+			steadyState.tick(mailSource.getArrivals());
+		}
+		if (series != null && series.isSampled(clock.Time())) {
+			writeSeries();
+		}
+		log.endTick();
+		clock.Tick();
+	}
+
+	/**
+	 * Sends a row of measurements to the series every few time steps from now on
+	 * @param series where the rows go, or null to stop
+	 */
+	public void exportSeries(TimeSeries series) {
+		this.series = series;
+	}
+
+	private void writeSeries() {
+		int[] queues = new int[automail.mailPools.length];
+		for (int k = 0; k < queues.length; k++) queues[k] = automail.mailPools[k].size();
+		try {
+			series.write(clock.Time(), queues, automail.countStates(), deliveredCount, scoring.getScore());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Finishes the series, if there is one
+	 */
+	public void close() throws IOException {
+		if (series != null) {
+			series.close();
+		}
+	}
+
+	/**
+	 * @return true once every generated item has been delivered, never with continuous arrivals
+	 */
+	public boolean isComplete() {
+		return !mailSource.isContinuous() && deliveredCount == mailSource.getMailCount();
+	}
+
+	/**
+	 * Gives a generated item that has not arrived yet a new priority level
+	 * @param priorityLevel the new level, 0 to make it ordinary mail
+	 * @return false if the item has already arrived, or the mail is not generated
+	 */
+	public boolean changePriority(int number, int priorityLevel) {
+		return mailSource instanceof MailGenerator
+				&& ((MailGenerator) mailSource).changePriority(number, priorityLevel);
+	}
+
+	/**
+	 * @return the sliding window measurements, or null unless arrivals are continuous
+	 */
+	public SteadyState getSteadyState() {
+		return steadyState;
+	}
+
+	/**
+	 * @return how many items are waiting in the mailrooms
+	 */
+	public int getBacklog() {
+		int backlog = 0;
+		for (IMailPool mailPool : automail.mailPools) backlog += mailPool.size();
+		return backlog;
+	}
+
+	/**
+	 * Steps the simulation until every item has been delivered
+	 */
+	public SimulationResult run() throws ExcessiveDeliveryException, ItemTooHeavyException {
+		if (mailSource.isContinuous()) {
+			throw new IllegalStateException("A simulation with continuous arrivals never completes");
+		}
+		while (!isComplete()) {
+			step();
+		}
+		return getResult();
+	}
+
+	public SimulationResult getResult() {
+		return new SimulationResult(clock.Time(), scoring.getScore(), deliveredCount,
+				deliveredCount == 0 ? 0 : (double) total_wait / deliveredCount, scoring.getTotals());
+	}
+
+	/**
+	 * @return the digest of the events so far, or null unless the configuration asks for one
+	 */
+	public TraceDigest getTrace() {
+		return trace;
+	}
+
+	public Building getBuilding() {
+		return building;
+	}
+
+	public Clock getClock() {
+		return clock;
+	}
+
+	class ReportDelivery implements IMailDelivery {
+		/** How many robots of each team have unloaded their shared item so far */
+		private final HashMap<MailItem, Integer> teamArrivals = new HashMap<>();
+
+		/** Confirm the delivery and calculate the total score */
+		public void deliver(MailItem deliveryItem, int numsOfTeam) {
+			if (!mailDelivered.get(deliveryItem.getNumber())) {
+				if(numsOfTeam == 1){ // means only one robot is delivering this item
+					record(deliveryItem);
+					log.delivered(deliveredCount, deliveryItem);
+				}else {
+					// this item is delivered by multiple robots, wait other robots to unload the item.
+					// Counted per item, as two teams can unload in the same time step
+					int count = teamArrivals.merge(deliveryItem, 1, Integer::sum);
+					if (count == numsOfTeam) { // all robots arrived
+						teamArrivals.remove(deliveryItem);
+						record(deliveryItem);
+						log.delivered(deliveredCount, deliveryItem);
+					}
+				}
+			} else {
+				try {
+					throw new MailAlreadyDeliveredException();
+				} catch (MailAlreadyDeliveredException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+
+		/**
+		 * Adds an item to the ledger and scores its delivery. With continuous arrivals items are only counted, so
+		 * that memory does not grow with the length of the run.
+		 */
+		private void record(MailItem deliveryItem) {
+			deliveredCount++;
+			total_wait += clock.Time() - deliveryItem.getArrivalTime();
+			scoring.deliver(deliveryItem, clock.Time() - deliveryItem.getArrivalTime());
+			if (steadyState != null) {
+				steadyState.delivered(clock.Time(), clock.Time() - deliveryItem.getArrivalTime());
+			} else {
+				mailDelivered.set(deliveryItem.getNumber());
+			}
+		}
+
+	}
+
+	public void printResults() {
+		System.out.println("T: " + clock.Time() + " | Simulation complete!");
+		System.out.println("Final Delivery time: " + clock.Time());
+		System.out.printf("Final Score: %.2f%n", scoring.getScore());
+		scoring.printBreakdown();
+		if (trace != null) {
+			System.out.println("Trace digest: " + trace);
+		}
+	}
+}
@@ -0,0 +1,40 @@
+package automail;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The outcome of a completed simulation
+ */
+public class SimulationResult {
+
+	/** The time the last item was delivered */
+	public final int finalTime;
+	/** The sum of the delivery scores, lower is better */
+	public final double score;
+	/** How many items were delivered */
+	public final int delivered;
+	/** The mean wait of the delivered items from arrival to delivery */
+	public final double meanLatency;
+	/** The total under every objective scored, by name, the automail score first as "score" */
+	public final Map<String, Double> objectives;
+
+	public SimulationResult(int finalTime, double score, int delivered, double meanLatency) {
+		this(finalTime, score, delivered, meanLatency, Collections.singletonMap("score", score));
+	}
+
+	public SimulationResult(int finalTime, double score, int delivered, double meanLatency,
+			Map<String, Double> objectives) {
+		this.finalTime = finalTime;
+		this.score = score;
+		this.delivered = delivered;
+		this.meanLatency = meanLatency;
+		this.objectives = Collections.unmodifiableMap(objectives);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Final Delivery time: %d | Delivered: %d | Mean Latency: %.1f | Final Score: %.2f",
+				finalTime, delivered, meanLatency, score);
+	}
+}
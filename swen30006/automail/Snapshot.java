@@ -0,0 +1,193 @@
+package automail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Map;
+
+import exceptions.ExcessiveDeliveryException;
+import exceptions.ItemTooHeavyException;
+
+/**
+ * A compact binary copy of a simulation between two time steps: the clock, the mail
+ * generator's random sequence position and the mail still to arrive (or the position in
+ * the arrival log being replayed), every pool with what it has learned, every
+ * robot and the delivery ledger. Any number of simulations can be resumed from one
+ * snapshot, which makes it cheap to fork what-if branches from a warmed up state.
+ *
+ * A checkpoint ({@link #checkpoint}) is a snapshot kept in memory that shares the generated
+ * mail still to arrive with its simulation instead of copying it, so it only costs the
+ * pools, robots and ledger; it can be resumed but not saved.
+ */
+public class Snapshot {
+
+	static final int MAGIC = 0x414D534E;
+	static final int VERSION = 6;
+
+	private final byte[] data;
+	/** The mail still to arrive, shared with the simulation of a checkpoint, or null */
+	private final Map<Integer, ArrayList<MailItem>> mail;
+
+	private Snapshot(byte[] data) {
+		this(data, null);
+	}
+
+	private Snapshot(byte[] data, Map<Integer, ArrayList<MailItem>> mail) {
+		this.data = data;
+		this.mail = mail;
+	}
+
+	/**
+	 * Usage: Snapshot save tick file [seed] | Snapshot resume file
+	 */
+	public static void main(String[] args) throws IOException {
+		Configuration config = Configuration.load("automail.properties");
+		try {
+			if (args.length >= 3 && args[0].equals("save")) {
+				if (args.length > 3) {
+					config.seed = Integer.parseInt(args[3]);
+				}
+				Simulation simulation = new Simulation(config, false);
+				int tick = Integer.parseInt(args[1]);
+				while (!simulation.isComplete() && simulation.getClock().Time() < tick) {
+					simulation.step();
+				}
+				Snapshot snapshot = capture(simulation);
+				snapshot.write(args[2]);
+				System.out.printf("Saved T: %d to %s (%d bytes)%n", snapshot.getTime(), args[2], snapshot.size());
+			} else if (args.length == 2 && args[0].equals("resume")) {
+				Simulation simulation = read(args[1]).resume(config, true);
+				simulation.run();
+				simulation.printResults();
+			} else {
+				System.out.println("Usage: Snapshot save tick file [seed] | Snapshot resume file");
+			}
+		} catch (ExcessiveDeliveryException | ItemTooHeavyException e) {
+			e.printStackTrace();
+			System.out.println("Simulation unable to complete.");
+		}
+	}
+
+	/**
+	 * Takes a snapshot of a simulation between two of its steps
+	 */
+	public static Snapshot capture(Simulation simulation) {
+		return new Snapshot(write(simulation, true));
+	}
+
+	/**
+	 * Takes a checkpoint of a simulation between two of its steps, sharing the generated mail
+	 * still to arrive rather than copying it
+	 */
+	public static Snapshot checkpoint(Simulation simulation) {
+		Map<Integer, ArrayList<MailItem>> mail = simulation.shareMail();
+		return new Snapshot(write(simulation, mail == null), mail);
+	}
+
+	private static byte[] write(Simulation simulation, boolean withMail) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			simulation.writeState(out, withMail);
+		} catch (IOException e) {
+			throw new IllegalStateException(e); // cannot happen writing to memory
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Builds a new simulation in the state the snapshot was taken in
+	 * @param config settings for the same building, with at least as many robots
+	 * @param verbose whether the resumed simulation prints every event
+	 */
+	public Simulation resume(Configuration config, boolean verbose) {
+		try {
+			return new Simulation(config, verbose, new DataInputStream(new ByteArrayInputStream(data)), mail);
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Corrupt simulation snapshot", e);
+		}
+	}
+
+	/**
+	 * @return the time the snapshot was taken
+	 */
+	public int getTime() {
+		return ByteBuffer.wrap(data).getInt(8);
+	}
+
+	/**
+	 * @return the size of the snapshot in bytes, without the mail a checkpoint shares
+	 */
+	public int size() {
+		return data.length;
+	}
+
+	public byte[] toByteArray() {
+		checkSaveable();
+		return data.clone();
+	}
+
+	public static Snapshot fromByteArray(byte[] data) {
+		return new Snapshot(data.clone());
+	}
+
+	public void write(String fileName) throws IOException {
+		checkSaveable();
+		Files.write(Paths.get(fileName), data);
+	}
+
+	private void checkSaveable() {
+		if (mail != null) {
+			throw new IllegalStateException("A checkpoint shares its mail with the simulation, so cannot be saved");
+		}
+	}
+
+	public static Snapshot read(String fileName) throws IOException {
+		return new Snapshot(Files.readAllBytes(Paths.get(fileName)));
+	}
+
+	/**
+	 * Writes a mail item, or null, as a fixed size record
+	 */
+	static void writeItem(DataOutput out, MailItem mailItem) throws IOException {
+		if (mailItem == null) {
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(mailItem.getNumber());
+		out.writeInt(mailItem.getDestFloor());
+		out.writeInt(mailItem.getArrivalTime());
+		out.writeInt(mailItem.getWeight());
+		out.writeByte(mailItem instanceof PriorityMailItem ? ((PriorityMailItem) mailItem).getPriorityLevel() : 0);
+	}
+
+	/**
+	 * Reads a record written by {@link #writeItem}, so that an item saved in several places
+	 * (a team of robots, for example) is restored as one item
+	 * @param items the items restored so far by number
+	 */
+	static MailItem readItem(DataInput in, Map<Integer, MailItem> items) throws IOException {
+		int number = in.readInt();
+		if (number == -1) {
+			return null;
+		}
+		int dest_floor = in.readInt();
+		int arrival_time = in.readInt();
+		int weight = in.readInt();
+		int priority_level = in.readUnsignedByte();
+		MailItem mailItem = items.get(number);
+		if (mailItem == null) {
+			mailItem = priority_level == 0 ? new MailItem(number, dest_floor, arrival_time, weight)
+					: new PriorityMailItem(number, dest_floor, arrival_time, weight, priority_level);
+			items.put(number, mailItem);
+		}
+		return mailItem;
+	}
+}
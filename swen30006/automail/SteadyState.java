@@ -0,0 +1,173 @@
+package automail;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import exceptions.ExcessiveDeliveryException;
+import exceptions.ItemTooHeavyException;
+
+/**
+ * Measures a simulation with continuous arrivals over a sliding window of time steps.
+ * Everything is kept in fixed size rings, so memory stays constant however long the
+ * simulation runs and however large the fleet: delivered items are counted here and then
+ * forgotten, and the latency percentiles are of the latest RECENT deliveries in the window.
+ */
+public class SteadyState {
+
+	/** The most recent deliveries kept for the latency percentiles */
+	static final int RECENT = 1 << 16;
+
+	/** The number of time steps in the window */
+	private final int window;
+	private final int[] tickArrivals;
+	private final int[] tickDeliveries;
+	private final long[] tickLatency;
+	private long windowArrivals = 0;
+	private long windowDeliveries = 0;
+	private long windowLatency = 0;
+	private int ticks = 0;
+
+	private int currentDeliveries = 0;
+	private long currentLatency = 0;
+
+	/** The delivery time and latency of the latest deliveries, for percentiles */
+	private final int[] recentTimes;
+	private final int[] recentLatencies;
+	private int recentNext = 0;
+	private int recentCount = 0;
+
+	private long totalArrived = 0;
+	private long totalDelivered = 0;
+
+	public static void main(String[] args) throws IOException {
+		Configuration config = Configuration.load("automail.properties");
+		if (args.length > 0) {
+			config.seed = Integer.parseInt(args[0]);
+		}
+		if (config.arrivalRate <= 0) {
+			System.out.println("Set Arrival_Rate to the mean number of items arriving each time step.");
+			return;
+		}
+		int ticks = config.getInt("Steady_Ticks", 0); // 0 runs until stopped
+		int interval = config.steadyReportInterval;
+		System.out.printf("Arrival_Rate: %.3f%n", config.arrivalRate);
+		System.out.printf("Robots: %d%n", config.robots);
+
+		Simulation simulation = new Simulation(config, false);
+		simulation.exportSeries(TimeSeries.open(config, simulation.getBuilding()));
+		try {
+			while (ticks == 0 || simulation.getClock().Time() < ticks) {
+				simulation.step();
+				int time = simulation.getClock().Time();
+				if (time % interval == 0) {
+					System.out.println(simulation.getSteadyState().report(time, simulation.getBacklog()));
+				}
+			}
+		} catch (ExcessiveDeliveryException | ItemTooHeavyException e) {
+			e.printStackTrace();
+			System.out.println("Simulation unable to complete.");
+		} finally {
+			simulation.close();
+		}
+	}
+
+	/**
+	 * @param window the number of time steps measured
+	 */
+	public SteadyState(int window) {
+		if (window <= 0) {
+			throw new IllegalArgumentException("The window must be at least one time step, not " + window);
+		}
+		this.window = window;
+		tickArrivals = new int[window];
+		tickDeliveries = new int[window];
+		tickLatency = new long[window];
+		recentTimes = new int[RECENT];
+		recentLatencies = new int[RECENT];
+	}
+
+	/**
+	 * Records an item delivered in the current time step
+	 * @param time the current time
+	 * @param latency how long the item waited from arrival to delivery
+	 */
+	void delivered(int time, int latency) {
+		currentDeliveries++;
+		currentLatency += latency;
+		recentTimes[recentNext] = time;
+		recentLatencies[recentNext] = latency;
+		recentNext = (recentNext + 1) % recentTimes.length;
+		recentCount = Math.min(recentCount + 1, recentTimes.length);
+	}
+
+	/**
+	 * Closes the current time step
+	 * @param arrivals how many items arrived in it
+	 */
+	void tick(int arrivals) {
+		int slot = ticks % window;
+		windowArrivals += arrivals - tickArrivals[slot];
+		windowDeliveries += currentDeliveries - tickDeliveries[slot];
+		windowLatency += currentLatency - tickLatency[slot];
+		tickArrivals[slot] = arrivals;
+		tickDeliveries[slot] = currentDeliveries;
+		tickLatency[slot] = currentLatency;
+		totalArrived += arrivals;
+		totalDelivered += currentDeliveries;
+		currentDeliveries = 0;
+		currentLatency = 0;
+		ticks++;
+	}
+
+	/**
+	 * @param time the current time
+	 * @param backlog how many items are waiting in the mailrooms; growing between
+	 *            reports means the fleet is saturated
+	 */
+	public String report(int time, int backlog) {
+		int span = Math.min(ticks, window);
+		int[] latencies = new int[recentCount];
+		int n = 0;
+		for (int i = 0; i < recentCount; i++) {
+			int index = (recentNext - 1 - i + recentTimes.length) % recentTimes.length;
+			if (recentTimes[index] <= time - span) {
+				break; // older entries are outside the window
+			}
+			latencies[n++] = recentLatencies[index];
+		}
+		Arrays.sort(latencies, 0, n);
+		return String.format(
+				"T: %d | window %d | arrivals %.3f/t | throughput %.3f/t | latency mean %.1f p50 %d p99 %d max %d | backlog %d | delivered %d of %d",
+				time, span, span == 0 ? 0.0 : (double) windowArrivals / span,
+				span == 0 ? 0.0 : (double) windowDeliveries / span,
+				windowDeliveries == 0 ? 0.0 : (double) windowLatency / windowDeliveries, percentile(latencies, n, 50),
+				percentile(latencies, n, 99), n == 0 ? 0 : latencies[n - 1], backlog, totalDelivered, totalArrived);
+	}
+
+	private static int percentile(int[] sorted, int n, int percent) {
+		if (n == 0) {
+			return 0;
+		}
+		int rank = (int) Math.ceil(percent / 100.0 * n);
+		return sorted[Math.max(rank, 1) - 1];
+	}
+
+	public long getTotalDelivered() {
+		return totalDelivered;
+	}
+
+	/**
+	 * @return the deliveries per time step over the window
+	 */
+	public double getThroughput() {
+		int span = Math.min(ticks, window);
+		return span == 0 ? 0 : (double) windowDeliveries / span;
+	}
+
+	/**
+	 * @return the mean wait of the items delivered in the window
+	 */
+	public double getMeanLatency() {
+		return windowDeliveries == 0 ? 0 : (double) windowLatency / windowDeliveries;
+	}
+}
@@ -0,0 +1,228 @@
+package automail;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Streams a simulation's measurements to a file every few time steps, for dashboards: the
+ * time, the items waiting in each mailroom, the robots in each state, the deliveries since
+ * the last row and in total, and the score so far. Rows are written as CSV or as fixed size
+ * binary records straight into a direct buffer, borrowed from a shared pool, which goes to
+ * the file's channel whenever it fills; nothing is kept in memory and nothing is formatted
+ * with printf, so runs of millions of time steps cost little.
+ *
+ * The binary file starts with MAGIC, VERSION, the sampling interval and the column names
+ * (each a length and UTF-8 bytes); each row is then the int columns followed by the score as
+ * a double. {@link #main} prints a binary file as CSV.
+ */
+public class TimeSeries implements Closeable {
+
+	static final int MAGIC = 0x414D5453; // "AMTS"
+	static final int VERSION = 1;
+	private static final int BUFFER_SIZE = 1 << 16;
+	/** Buffers returned by closed series, so many short runs do not keep allocating */
+	private static final ConcurrentLinkedQueue<ByteBuffer> BUFFERS = new ConcurrentLinkedQueue<>();
+
+	private final FileChannel channel;
+	private final boolean binary;
+	private final int interval;
+	private final int columns;
+	private ByteBuffer buffer;
+	private int lastDelivered = 0;
+
+	/**
+	 * Usage: TimeSeries file.bin, prints a binary series as CSV
+	 */
+	public static void main(String[] args) throws IOException {
+		try (FileChannel in = FileChannel.open(Paths.get(args[0]), StandardOpenOption.READ)) {
+			ByteBuffer buffer = ByteBuffer.allocate((int) in.size());
+			while (buffer.hasRemaining() && in.read(buffer) >= 0) {
+			}
+			buffer.flip();
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+				throw new IOException("Not a time series");
+			}
+			buffer.getInt(); // interval
+			int columns = buffer.getShort();
+			StringBuilder header = new StringBuilder();
+			for (int c = 0; c < columns; c++) {
+				byte[] name = new byte[buffer.getShort()];
+				buffer.get(name);
+				header.append(c == 0 ? "" : ",").append(new String(name, StandardCharsets.UTF_8));
+			}
+			System.out.println(header);
+			while (buffer.hasRemaining()) {
+				StringBuilder row = new StringBuilder();
+				for (int c = 0; c < columns - 1; c++) row.append(buffer.getInt()).append(',');
+				row.append(String.format("%.2f", buffer.getDouble()));
+				System.out.println(row);
+			}
+		}
+	}
+
+	/**
+	 * @return the series the configuration asks for with Series_File, or null if none
+	 */
+	public static TimeSeries open(Configuration config, Building building) throws IOException {
+		String file = config.properties.getProperty("Series_File");
+		if (file == null || file.trim().isEmpty()) {
+			return null;
+		}
+		boolean binary = config.properties.getProperty("Series_Format", "csv").trim().equalsIgnoreCase("binary");
+		return new TimeSeries(file.trim(), binary, config.getInt("Series_Interval", 1), building.MAILROOM_LOCATIONS);
+	}
+
+	/**
+	 * @param file the file to write, replaced if it exists
+	 * @param binary whether to write binary records rather than CSV
+	 * @param interval write a row every this many time steps
+	 * @param mailrooms the mailroom floors, one queue column each
+	 */
+	public TimeSeries(String file, boolean binary, int interval, int[] mailrooms) throws IOException {
+		this.binary = binary;
+		this.interval = Math.max(1, interval);
+		List<String> names = new ArrayList<>();
+		names.add("time");
+		for (int mailroom : mailrooms) names.add("queue_" + mailroom);
+		names.add("delivering");
+		names.add("waiting");
+		names.add("returning");
+		names.add("delivered");
+		names.add("delivered_total");
+		names.add("score");
+		columns = names.size();
+		channel = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		buffer = BUFFERS.poll();
+		// a row must fit, however many mailrooms
+		if (buffer == null || buffer.capacity() < rowSize()) {
+			buffer = ByteBuffer.allocateDirect(Math.max(BUFFER_SIZE, rowSize()));
+		}
+		// the header is flushed as it goes, as it can be longer than the buffer
+		if (binary) {
+			buffer.putInt(MAGIC).putInt(VERSION).putInt(this.interval).putShort((short) columns);
+			for (String name : names) {
+				byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+				if (buffer.remaining() < 2 + bytes.length) {
+					flush();
+				}
+				buffer.putShort((short) bytes.length).put(bytes);
+			}
+		} else {
+			for (int c = 0; c < columns; c++) {
+				byte[] bytes = names.get(c).getBytes(StandardCharsets.UTF_8);
+				if (buffer.remaining() < 2 + bytes.length) {
+					flush();
+				}
+				if (c > 0) buffer.put((byte) ',');
+				buffer.put(bytes);
+			}
+			buffer.put((byte) '\n');
+		}
+	}
+
+	/**
+	 * @return the longest a row can be: as CSV, every int with a sign, and the score
+	 */
+	private int rowSize() {
+		return 12 * columns + 24;
+	}
+
+	/**
+	 * @return whether the time step is one that gets a row
+	 */
+	public boolean isSampled(int time) {
+		return time % interval == 0;
+	}
+
+	/**
+	 * Writes one row
+	 * @param queues the items waiting in each mailroom
+	 * @param states the robots in each RobotState, by ordinal
+	 * @param delivered the deliveries so far
+	 */
+	public void write(int time, int[] queues, int[] states, int delivered, double score) throws IOException {
+		if (buffer.remaining() < rowSize()) {
+			flush();
+		}
+		int delivering = states[Robot.RobotState.DELIVERING.ordinal()];
+		int waiting = states[Robot.RobotState.WAITING.ordinal()];
+		int returning = states[Robot.RobotState.RETURNING.ordinal()];
+		if (binary) {
+			buffer.putInt(time);
+			for (int queue : queues) buffer.putInt(queue);
+			buffer.putInt(delivering).putInt(waiting).putInt(returning);
+			buffer.putInt(delivered - lastDelivered).putInt(delivered);
+			buffer.putDouble(score);
+		} else {
+			putDecimal(time);
+			for (int queue : queues) putDecimal(queue);
+			putDecimal(delivering);
+			putDecimal(waiting);
+			putDecimal(returning);
+			putDecimal(delivered - lastDelivered);
+			putDecimal(delivered);
+			// the score to two places
+			long hundredths = Math.round(score * 100);
+			putDigits(hundredths / 100);
+			buffer.put((byte) '.');
+			buffer.put((byte) ('0' + hundredths / 10 % 10));
+			buffer.put((byte) ('0' + hundredths % 10));
+			buffer.put((byte) '\n');
+		}
+		lastDelivered = delivered;
+	}
+
+	/** A number and the comma after it */
+	private void putDecimal(long value) {
+		putDigits(value);
+		buffer.put((byte) ',');
+	}
+
+	private void putDigits(long value) {
+		if (value < 0) {
+			buffer.put((byte) '-');
+			value = -value;
+		}
+		long divisor = 1;
+		while (divisor <= value / 10) divisor *= 10;
+		for (; divisor > 0; divisor /= 10) {
+			buffer.put((byte) ('0' + value / divisor % 10));
+		}
+	}
+
+	private void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Writes what is buffered, closes the file and returns the buffer to the pool, emptied
+	 * even if the write failed
+	 */
+	@Override
+	public void close() throws IOException {
+		if (buffer == null) {
+			return;
+		}
+		try {
+			flush();
+		} finally {
+			channel.close();
+			buffer.clear();
+			BUFFERS.offer(buffer);
+			buffer = null;
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package automail;
+
+import java.util.Arrays;
+
+/**
+ * A rolling 64 bit hash over the events of a simulation (arrivals, returns, steals, state
+ * changes, loads, dispatches and deliveries, each with its time step), so that two engines
+ * can be checked for the same schedule without keeping their logs. The digest is also kept
+ * at the end of every time step: once two runs differ their digests stay different, so the
+ * first differing time step can be found by comparing these.
+ */
+public class TraceDigest {
+
+	/** The kinds of event, part of what is hashed */
+	static final int ARRIVAL = 1, RETURNED = 2, STOLEN = 3, STATE = 4, LOAD = 5, DISPATCH = 6, DELIVERED = 7;
+
+	private static final long MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+	private long digest = 0;
+	private long events = 0;
+	/** The digest after each time step, from firstTick */
+	private long[] ticks = new long[1024];
+	private int tickCount = 0;
+	private int firstTick = -1;
+
+	/**
+	 * Mixes one event into the digest
+	 */
+	void event(int kind, int time, int a, int b, int c) {
+		mix(((long) kind << 32) | (time & 0xFFFFFFFFL));
+		mix(((long) a << 32) | (b & 0xFFFFFFFFL));
+		mix(c);
+		events++;
+	}
+
+	private void mix(long value) {
+		long h = (digest ^ value) * MULTIPLIER;
+		digest = h ^ (h >>> 31);
+	}
+
+	/**
+	 * Records the digest at the end of a time step
+	 */
+	void endTick(int time) {
+		if (firstTick < 0) {
+			firstTick = time;
+		}
+		if (tickCount == ticks.length) {
+			ticks = Arrays.copyOf(ticks, 2 * ticks.length);
+		}
+		ticks[tickCount++] = digest;
+	}
+
+	public long getDigest() {
+		return digest;
+	}
+
+	public long getEvents() {
+		return events;
+	}
+
+	/**
+	 * @return the first time step after which this trace and the other differ, or -1 if they
+	 *         are the same
+	 */
+	public int firstDifference(TraceDigest other) {
+		int start = Math.max(firstTick, other.firstTick);
+		if (firstTick != other.firstTick) {
+			return start; // started from different snapshots, no common steps to compare
+		}
+		int common = Math.min(tickCount, other.tickCount);
+		if (common == 0 || ticks[common - 1] == other.ticks[common - 1]) {
+			if (tickCount == other.tickCount && digest == other.digest) {
+				return -1;
+			}
+			return firstTick + common; // the same until one of them stopped
+		}
+		// the first mismatch, the steps before it all match
+		int lo = 0;
+		int hi = common - 1;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (ticks[mid] == other.ticks[mid]) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return firstTick + lo;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%016x (%d events, %d steps)", digest, events, tickCount);
+	}
+}
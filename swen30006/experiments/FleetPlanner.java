@@ -0,0 +1,233 @@
+package experiments;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import automail.Configuration;
+import automail.SimulationResult;
+
+/**
+ * Finds the smallest number of robots whose mean score, time or latency meets a target.
+ * Each round probes several fleet sizes between the bounds at once (a k-ary bisection, one
+ * probe per thread), running each probe over the same seeds in parallel batches until its
+ * confidence interval lies clearly on one side of the target.
+ */
+public class FleetPlanner {
+
+	/** The outcome of a fleet size */
+	private enum Verdict {
+		MEETS, FAILS, UNDECIDED
+	}
+
+	/** The seeds run so far for one fleet size */
+	private static class Candidate {
+		final RunningStatistics statistics = new RunningStatistics();
+		int nextSeed = 0;
+		boolean incomplete = false; // a simulation was unable to complete
+	}
+
+	private final Configuration config;
+	private final Metric metric;
+	private final double target;
+	private final double confidence;
+	private final int minSeeds;
+	private final int maxSeeds;
+	private final int threads;
+	private final int firstSeed;
+	private final Map<Integer, Candidate> candidates = new TreeMap<>();
+	private ExecutorService pool;
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		Configuration config = Configuration.load("automail.properties");
+		Metric metric = Metric.parse(config.properties.getProperty("Plan_Metric", "score"));
+		String target = config.properties.getProperty("Plan_Target");
+		if (target == null) {
+			System.out.println("Set Plan_Target to the highest acceptable mean " + metric.name().toLowerCase());
+			return;
+		}
+		int minRobots = config.getInt("Plan_Min_Robots", 1);
+		int maxRobots = config.getInt("Plan_Max_Robots", 64);
+		FleetPlanner planner = new FleetPlanner(config, metric, Double.parseDouble(target),
+				config.getDouble("Plan_Confidence", 0.95), config.getInt("Plan_Min_Seeds", 5),
+				config.getInt("Plan_Max_Seeds", 100),
+				config.getInt("Plan_Threads", Runtime.getRuntime().availableProcessors()));
+		System.out.printf("Planning for mean %s <= %s with %d to %d robots%n", metric.name().toLowerCase(), target,
+				minRobots, maxRobots);
+		int robots = planner.plan(minRobots, maxRobots);
+		planner.printResults();
+		if (robots < 0) {
+			System.out.printf("Even %d robots do not meet the target%n", maxRobots);
+		} else {
+			System.out.printf("Smallest fleet: %d robots%n", robots);
+		}
+	}
+
+	/**
+	 * @param config the building and mail to plan for; its seed, if any, is the first seed used
+	 * @param metric what the target applies to
+	 * @param target the highest acceptable mean of the metric
+	 * @param confidence the confidence level of the intervals deciding each fleet size
+	 * @param minSeeds the fewest seeds run before deciding a fleet size
+	 * @param maxSeeds the most seeds run; after these a fleet size is decided by its mean
+	 * @param threads how many simulations run at once
+	 */
+	public FleetPlanner(Configuration config, Metric metric, double target, double confidence, int minSeeds,
+			int maxSeeds, int threads) {
+		this.config = config;
+		this.metric = metric;
+		this.target = target;
+		this.confidence = confidence;
+		this.minSeeds = Math.max(2, minSeeds);
+		this.maxSeeds = Math.max(this.minSeeds, maxSeeds);
+		this.threads = threads;
+		this.firstSeed = config.seed == null ? 1 : config.seed;
+	}
+
+	/**
+	 * Assumes adding robots never makes the metric worse
+	 * @return the smallest number of robots in [minRobots, maxRobots] meeting the target, or
+	 *         -1 if even maxRobots does not; every mailroom needs a robot, so fewer robots
+	 *         than mailrooms are never tried
+	 */
+	public int plan(int minRobots, int maxRobots) throws InterruptedException {
+		minRobots = Math.max(minRobots, config.mailroomFloors.length);
+		maxRobots = Math.max(maxRobots, minRobots);
+		pool = Executors.newFixedThreadPool(threads);
+		try {
+			List<Integer> first = new ArrayList<>();
+			first.add(maxRobots);
+			first.addAll(probes(minRobots, maxRobots, threads - 1));
+			evaluate(first);
+			if (verdict(maxRobots) != Verdict.MEETS) {
+				return -1;
+			}
+			int lo = minRobots;
+			int hi = maxRobots; // always meets
+			while (lo < hi) {
+				List<Integer> probes = probes(lo, hi, threads);
+				evaluate(probes);
+				int newHi = hi;
+				for (int robots : probes) {
+					if (verdict(robots) == Verdict.MEETS) {
+						newHi = Math.min(newHi, robots);
+					}
+				}
+				int newLo = lo;
+				for (int robots : probes) {
+					if (robots < newHi && verdict(robots) == Verdict.FAILS) {
+						newLo = Math.max(newLo, robots + 1);
+					}
+				}
+				lo = newLo;
+				hi = newHi;
+			}
+			return hi;
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * @return up to count fleet sizes spread evenly over [lo, hi), never hi itself
+	 */
+	private List<Integer> probes(int lo, int hi, int count) {
+		TreeSet<Integer> probes = new TreeSet<>();
+		int k = Math.min(Math.max(count, 1), hi - lo);
+		for (int j = 1; j <= k; j++) {
+			probes.add(lo + (int) ((long) j * (hi - lo) / (k + 1)));
+		}
+		probes.remove(hi);
+		return new ArrayList<>(probes);
+	}
+
+	/**
+	 * Runs batches of seeds for the fleet sizes until each one is decided
+	 */
+	private void evaluate(List<Integer> fleetSizes) throws InterruptedException {
+		while (true) {
+			List<Integer> undecided = new ArrayList<>();
+			for (int robots : fleetSizes) {
+				if (verdict(robots) == Verdict.UNDECIDED) {
+					undecided.add(robots);
+				}
+			}
+			if (undecided.isEmpty()) {
+				return;
+			}
+			// Keep every thread busy: share them between the undecided fleet sizes
+			int batch = Math.max(1, threads / undecided.size());
+			List<Configuration> configs = new ArrayList<>();
+			List<Integer> owners = new ArrayList<>();
+			for (int robots : undecided) {
+				Candidate candidate = candidate(robots);
+				int runs = Math.max(batch, minSeeds - candidate.nextSeed);
+				runs = Math.min(runs, maxSeeds - candidate.nextSeed);
+				for (int i = 0; i < runs; i++) {
+					Configuration run = Trials.withSeed(config, firstSeed + candidate.nextSeed++);
+					run.robots = robots;
+					configs.add(run);
+					owners.add(robots);
+				}
+			}
+			List<SimulationResult> results = Trials.runAll(pool, configs);
+			for (int i = 0; i < results.size(); i++) {
+				Candidate candidate = candidate(owners.get(i));
+				if (results.get(i) == null) {
+					candidate.incomplete = true;
+				} else {
+					candidate.statistics.add(metric.value(results.get(i)));
+				}
+			}
+		}
+	}
+
+	private Candidate candidate(int robots) {
+		Candidate candidate = candidates.get(robots);
+		if (candidate == null) {
+			candidate = new Candidate();
+			candidates.put(robots, candidate);
+		}
+		return candidate;
+	}
+
+	private Verdict verdict(int robots) {
+		Candidate candidate = candidate(robots);
+		if (candidate.incomplete) {
+			return Verdict.FAILS; // too few robots to carry the heaviest items
+		}
+		RunningStatistics statistics = candidate.statistics;
+		if (statistics.getCount() < minSeeds) {
+			return Verdict.UNDECIDED;
+		}
+		double halfWidth = statistics.halfWidth(confidence);
+		if (statistics.getMean() + halfWidth <= target) {
+			return Verdict.MEETS;
+		} else if (statistics.getMean() - halfWidth > target) {
+			return Verdict.FAILS;
+		} else if (statistics.getCount() >= maxSeeds) {
+			return statistics.getMean() <= target ? Verdict.MEETS : Verdict.FAILS;
+		}
+		return Verdict.UNDECIDED;
+	}
+
+	public void printResults() {
+		int runs = 0;
+		for (Map.Entry<Integer, Candidate> entry : candidates.entrySet()) {
+			Candidate candidate = entry.getValue();
+			runs += candidate.nextSeed;
+			if (candidate.incomplete) {
+				System.out.printf("Robots: %3d | unable to complete%n", entry.getKey());
+			} else {
+				System.out.printf("Robots: %3d | %s | %s%n", entry.getKey(), verdict(entry.getKey()),
+						candidate.statistics);
+			}
+		}
+		System.out.printf("Simulations run: %d%n", runs);
+	}
+}
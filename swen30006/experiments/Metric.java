@@ -0,0 +1,33 @@
+package experiments;
+
+import automail.SimulationResult;
+
+/**
+ * The measures of a simulation that experiments can target, lower is better for all of them
+ */
+public enum Metric {
+	/** The final delivery score */
+	SCORE,
+	/** The final delivery time */
+	TIME,
+	/** The mean wait from arrival to delivery */
+	LATENCY;
+
+	public double value(SimulationResult result) {
+		switch (this) {
+		case TIME:
+			return result.finalTime;
+		case LATENCY:
+			return result.meanLatency;
+		default:
+			return result.score;
+		}
+	}
+
+	/**
+	 * @param name a metric name in any case, such as score
+	 */
+	public static Metric parse(String name) {
+		return valueOf(name.trim().toUpperCase());
+	}
+}
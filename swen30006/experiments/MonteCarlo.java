@@ -0,0 +1,149 @@
+package experiments;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import automail.Configuration;
+import automail.SimulationResult;
+
+/**
+ * Estimates the mean final delivery time and score of a configuration over random seeds.
+ * Seeds run in parallel, a few ahead of the results being used, and the estimate stops as
+ * soon as the confidence intervals of both means are within the requested precision.
+ * Results are used in seed order, so the stopping point does not depend on the threads.
+ */
+public class MonteCarlo {
+
+	private final Configuration config;
+	private final double precision;
+	private final double confidence;
+	private final int minRuns;
+	private final int maxRuns;
+	private final int threads;
+
+	private final RunningStatistics time = new RunningStatistics();
+	private final RunningStatistics score = new RunningStatistics();
+	private final RunningStatistics latency = new RunningStatistics();
+	/** The other objectives configured, from the same runs */
+	private final Map<String, RunningStatistics> objectives = new LinkedHashMap<>();
+	private int runs = 0;
+	private int failures = 0;
+	private int started = 0;
+	private long elapsedMillis = 0;
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		Configuration config = Configuration.load("automail.properties");
+		if (args.length > 0) {
+			config.seed = Integer.parseInt(args[0]);
+		}
+		MonteCarlo monteCarlo = new MonteCarlo(config, config.getDouble("MonteCarlo_Precision", 0.02),
+				config.getDouble("MonteCarlo_Confidence", 0.95), config.getInt("MonteCarlo_Min_Runs", 10),
+				config.getInt("MonteCarlo_Max_Runs", 10000),
+				config.getInt("MonteCarlo_Threads", Runtime.getRuntime().availableProcessors()));
+		monteCarlo.run();
+		monteCarlo.printResults();
+	}
+
+	/**
+	 * @param config the configuration to evaluate; its seed, if any, is the first seed used
+	 * @param precision the largest acceptable confidence interval half width relative to the mean
+	 * @param confidence the confidence level of the intervals
+	 * @param minRuns the fewest simulations before stopping
+	 * @param maxRuns the most simulations, whatever the precision reached
+	 * @param threads how many simulations run at once
+	 */
+	public MonteCarlo(Configuration config, double precision, double confidence, int minRuns, int maxRuns,
+			int threads) {
+		this.config = config;
+		this.precision = precision;
+		this.confidence = confidence;
+		this.minRuns = Math.max(2, minRuns);
+		this.maxRuns = Math.max(this.minRuns, maxRuns);
+		this.threads = threads;
+	}
+
+	public void run() throws InterruptedException {
+		long start = System.currentTimeMillis();
+		int firstSeed = config.seed == null ? 1 : config.seed;
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		ArrayDeque<Future<SimulationResult>> inFlight = new ArrayDeque<>();
+		try {
+			while (!isPrecise() && runs + failures < maxRuns) {
+				// keep every thread busy with the seeds after the next one needed
+				while (inFlight.size() < 2 * threads && started < maxRuns) {
+					Configuration run = Trials.withSeed(config, firstSeed + started++);
+					inFlight.add(pool.submit((Callable<SimulationResult>) () -> Trials.run(run)));
+				}
+				SimulationResult result = inFlight.poll().get();
+				if (result == null) {
+					failures++;
+				} else {
+					runs++;
+					time.add(result.finalTime);
+					score.add(result.score);
+					latency.add(result.meanLatency);
+					for (Map.Entry<String, Double> objective : result.objectives.entrySet()) {
+						if (!objective.getKey().equals("score")) {
+							objectives.computeIfAbsent(objective.getKey(), k -> new RunningStatistics())
+									.add(objective.getValue());
+						}
+					}
+				}
+			}
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			for (Future<SimulationResult> future : inFlight) {
+				future.cancel(true);
+			}
+			pool.shutdownNow();
+			elapsedMillis = System.currentTimeMillis() - start;
+		}
+	}
+
+	private boolean isPrecise() {
+		return runs >= minRuns && time.relativeHalfWidth(confidence) <= precision
+				&& score.relativeHalfWidth(confidence) <= precision;
+	}
+
+	public RunningStatistics getTime() {
+		return time;
+	}
+
+	public RunningStatistics getScore() {
+		return score;
+	}
+
+	/**
+	 * @return how many simulations completed before the precision was reached
+	 */
+	public int getRuns() {
+		return runs;
+	}
+
+	public void printResults() {
+		System.out.printf("Simulations needed: %d (%d unable to complete, %d started) in %d ms%n", runs, failures,
+				started, elapsedMillis);
+		System.out.printf("Precision %s: %.2f%% of the mean at %.0f%% confidence%n",
+				isPrecise() ? "reached" : "NOT reached", 100 * precision, 100 * confidence);
+		print("Final Delivery time", time);
+		print("Final Score", score);
+		print("Mean Latency", latency);
+		for (Map.Entry<String, RunningStatistics> objective : objectives.entrySet()) {
+			print("Objective " + objective.getKey(), objective.getValue());
+		}
+	}
+
+	private void print(String name, RunningStatistics statistics) {
+		System.out.printf("%s: %.2f +/- %.2f (%.2f%%) | sd %.2f | min %.2f | max %.2f%n", name, statistics.getMean(),
+				statistics.halfWidth(confidence), 100 * statistics.relativeHalfWidth(confidence),
+				statistics.getStandardDeviation(), statistics.getMin(), statistics.getMax());
+	}
+}
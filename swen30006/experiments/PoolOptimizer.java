@@ -0,0 +1,248 @@
+package experiments;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import automail.Configuration;
+import automail.Robot;
+import automail.SimulationResult;
+import strategies.PoolOrder;
+
+/**
+ * Searches the MailPool's weight class boundaries and delivery order for the lowest mean
+ * score in a building, with the cross-entropy method. Every generation samples a population
+ * of settings, scores each one over the same seeds (so settings are compared on identical
+ * workloads) with all the simulations of the generation running in parallel, and then moves
+ * the sampling distribution towards the best (elite) settings.
+ */
+public class PoolOptimizer {
+
+	/** One point in the search space and its scores */
+	private static class Candidate {
+		final int individualMaxWeight;
+		final int pairMaxWeight;
+		final PoolOrder order;
+		double[] scores;
+		double mean = Double.POSITIVE_INFINITY;
+
+		Candidate(int individualMaxWeight, int pairMaxWeight, PoolOrder order) {
+			this.individualMaxWeight = individualMaxWeight;
+			this.pairMaxWeight = pairMaxWeight;
+			this.order = order;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("Individual_Max_Weight=%d Pair_Max_Weight=%d Pool_Order=%s", individualMaxWeight,
+					pairMaxWeight, order);
+		}
+	}
+
+	/** The lightest individual weight class searched */
+	private static final int MIN_INDIVIDUAL_WEIGHT = 1000;
+	/** Keep some spread so the search does not collapse too early */
+	private static final double MIN_SPREAD = 10;
+
+	private final Configuration config;
+	private final int population;
+	private final int generations;
+	private final int seeds;
+	private final double eliteFraction;
+	private final double smoothing;
+	private final int threads;
+	private final Random random;
+
+	private Candidate best;
+	private Candidate baseline;
+	private int simulations = 0;
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		Configuration config = Configuration.load("automail.properties");
+		PoolOptimizer optimizer = new PoolOptimizer(config, config.getInt("Optimize_Population", 24),
+				config.getInt("Optimize_Generations", 10), config.getInt("Optimize_Seeds", 20),
+				config.getDouble("Optimize_Elite", 0.25), config.getDouble("Optimize_Smoothing", 0.7),
+				config.getInt("Optimize_Threads", Runtime.getRuntime().availableProcessors()),
+				config.getInt("Optimize_Random_Seed", 1));
+		optimizer.run();
+		optimizer.printResults();
+	}
+
+	/**
+	 * @param config the building and mail to optimise for; its seed, if any, is the first seed
+	 * @param population the settings sampled in each generation
+	 * @param generations how many generations to run
+	 * @param seeds the seeds every setting is scored over
+	 * @param eliteFraction the fraction of each generation the distribution moves towards
+	 * @param smoothing how far the distribution moves towards the elite each generation, 0 to 1
+	 * @param threads how many simulations run at once
+	 * @param randomSeed the seed for sampling settings
+	 */
+	public PoolOptimizer(Configuration config, int population, int generations, int seeds, double eliteFraction,
+			double smoothing, int threads, long randomSeed) {
+		this.config = config;
+		this.population = Math.max(2, population);
+		this.generations = generations;
+		this.seeds = seeds;
+		this.eliteFraction = eliteFraction;
+		this.smoothing = smoothing;
+		this.threads = threads;
+		this.random = new Random(randomSeed);
+	}
+
+	public void run() throws InterruptedException {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			baseline = new Candidate(config.individualMaxWeight, config.pairMaxWeight, config.poolOrder);
+			evaluate(pool, Arrays.asList(baseline));
+			best = baseline;
+
+			// Start wide: the whole feasible range, every order equally likely
+			double individualMean = (MIN_INDIVIDUAL_WEIGHT + Robot.INDIVIDUAL_MAX_WEIGHT) / 2.0;
+			double individualSpread = (Robot.INDIVIDUAL_MAX_WEIGHT - MIN_INDIVIDUAL_WEIGHT) / 2.0;
+			double pairMean = (Robot.INDIVIDUAL_MAX_WEIGHT + Robot.PAIR_MAX_WEIGHT) / 2.0;
+			double pairSpread = (Robot.PAIR_MAX_WEIGHT - Robot.INDIVIDUAL_MAX_WEIGHT) / 2.0;
+			PoolOrder[] orders = PoolOrder.values();
+			double[] orderWeights = new double[orders.length];
+			Arrays.fill(orderWeights, 1.0 / orders.length);
+			int elites = Math.max(1, (int) Math.round(population * eliteFraction));
+
+			for (int generation = 1; generation <= generations; generation++) {
+				List<Candidate> candidates = new ArrayList<>();
+				for (int i = 0; i < population; i++) {
+					int individual = clamp(individualMean + individualSpread * random.nextGaussian(),
+							MIN_INDIVIDUAL_WEIGHT, Robot.INDIVIDUAL_MAX_WEIGHT);
+					int pair = clamp(pairMean + pairSpread * random.nextGaussian(), individual, Robot.PAIR_MAX_WEIGHT);
+					candidates.add(new Candidate(individual, pair, orders[sample(orderWeights)]));
+				}
+				evaluate(pool, candidates);
+				candidates.sort(Comparator.comparingDouble(c -> c.mean));
+				if (candidates.get(0).mean < best.mean) {
+					best = candidates.get(0);
+				}
+
+				// Move the distribution towards the elite
+				RunningStatistics individualElite = new RunningStatistics();
+				RunningStatistics pairElite = new RunningStatistics();
+				double[] eliteOrders = new double[orders.length];
+				for (Candidate elite : candidates.subList(0, elites)) {
+					individualElite.add(elite.individualMaxWeight);
+					pairElite.add(elite.pairMaxWeight);
+					eliteOrders[elite.order.ordinal()] += 1.0 / elites;
+				}
+				individualMean = mix(individualMean, individualElite.getMean());
+				individualSpread = Math.max(MIN_SPREAD, mix(individualSpread, individualElite.getStandardDeviation()));
+				pairMean = mix(pairMean, pairElite.getMean());
+				pairSpread = Math.max(MIN_SPREAD, mix(pairSpread, pairElite.getStandardDeviation()));
+				for (int k = 0; k < orders.length; k++) {
+					orderWeights[k] = mix(orderWeights[k], eliteOrders[k]);
+				}
+				System.out.printf("Generation %2d: best %.2f | elite mean individual %.0f pair %.0f | %s%n",
+						generation, candidates.get(0).mean, individualElite.getMean(), pairElite.getMean(),
+						candidates.get(0));
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Scores every candidate over the shared seeds, all simulations at once
+	 */
+	private void evaluate(ExecutorService pool, List<Candidate> candidates) throws InterruptedException {
+		int firstSeed = config.seed == null ? 1 : config.seed;
+		List<Configuration> configs = new ArrayList<>();
+		for (Candidate candidate : candidates) {
+			for (int s = 0; s < seeds; s++) {
+				Configuration run = Trials.withSeed(config, firstSeed + s);
+				run.individualMaxWeight = candidate.individualMaxWeight;
+				run.pairMaxWeight = candidate.pairMaxWeight;
+				run.poolOrder = candidate.order;
+				configs.add(run);
+			}
+		}
+		List<SimulationResult> results = Trials.runAll(pool, configs);
+		simulations += results.size();
+		for (int c = 0; c < candidates.size(); c++) {
+			Candidate candidate = candidates.get(c);
+			candidate.scores = new double[seeds];
+			RunningStatistics statistics = new RunningStatistics();
+			boolean complete = true;
+			for (int s = 0; s < seeds; s++) {
+				SimulationResult result = results.get(c * seeds + s);
+				candidate.scores[s] = result == null ? Double.POSITIVE_INFINITY : result.score;
+				if (result == null) {
+					complete = false;
+				} else {
+					statistics.add(result.score);
+				}
+			}
+			// a setting that cannot deliver everything is never chosen; infinity in the running
+			// mean would make it NaN, which never compares as worse
+			candidate.mean = complete ? statistics.getMean() : Double.POSITIVE_INFINITY;
+		}
+	}
+
+	private double mix(double current, double elite) {
+		return (1 - smoothing) * current + smoothing * elite;
+	}
+
+	private int sample(double[] weights) {
+		double total = 0;
+		for (double weight : weights) total += weight;
+		double point = random.nextDouble() * total;
+		for (int k = 0; k < weights.length - 1; k++) {
+			point -= weights[k];
+			if (point < 0) {
+				return k;
+			}
+		}
+		return weights.length - 1;
+	}
+
+	private static int clamp(double value, int min, int max) {
+		return (int) Math.max(min, Math.min(max, Math.round(value)));
+	}
+
+	public void printResults() {
+		System.out.printf("Simulations run: %d%n", simulations);
+		System.out.println("Baseline: " + baseline);
+		printDistribution(baseline);
+		System.out.println("Best configuration:");
+		System.out.println("Individual_Max_Weight=" + best.individualMaxWeight);
+		System.out.println("Pair_Max_Weight=" + best.pairMaxWeight);
+		System.out.println("Triple_Max_Weight=" + config.tripleMaxWeight);
+		System.out.println("Pool_Order=" + best.order);
+		printDistribution(best);
+	}
+
+	private void printDistribution(Candidate candidate) {
+		double[] sorted = Arrays.stream(candidate.scores).filter(score -> score != Double.POSITIVE_INFINITY).sorted()
+				.toArray();
+		if (sorted.length < candidate.scores.length) {
+			System.out.printf("Unable to complete %d of %d seeds%n", candidate.scores.length - sorted.length,
+					candidate.scores.length);
+			if (sorted.length == 0) {
+				return;
+			}
+		}
+		RunningStatistics statistics = new RunningStatistics();
+		for (double score : sorted) statistics.add(score);
+		System.out.printf("Score over %d seeds: mean %.2f +/- %.2f | sd %.2f | min %.2f | p25 %.2f | p50 %.2f | p75 %.2f | max %.2f%n",
+				sorted.length, statistics.getMean(), statistics.halfWidth(0.95), statistics.getStandardDeviation(),
+				sorted[0], quantile(sorted, 0.25), quantile(sorted, 0.5), quantile(sorted, 0.75),
+				sorted[sorted.length - 1]);
+	}
+
+	private static double quantile(double[] sorted, double q) {
+		double position = q * (sorted.length - 1);
+		int lower = (int) Math.floor(position);
+		int upper = Math.min(lower + 1, sorted.length - 1);
+		return sorted[lower] + (position - lower) * (sorted[upper] - sorted[lower]);
+	}
+}
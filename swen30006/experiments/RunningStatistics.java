@@ -0,0 +1,149 @@
+package experiments;
+
+/**
+ * The mean and variance of a stream of observations, updated one at a time (Welford's method),
+ * with the confidence interval of the mean.
+ */
+public class RunningStatistics {
+
+	private long count = 0;
+	private double mean = 0;
+	private double squares = 0; // sum of squared differences from the mean
+	private double min = Double.POSITIVE_INFINITY;
+	private double max = Double.NEGATIVE_INFINITY;
+
+	public void add(double value) {
+		count++;
+		double delta = value - mean;
+		mean += delta / count;
+		squares += delta * (value - mean);
+		min = Math.min(min, value);
+		max = Math.max(max, value);
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public double getMean() {
+		return mean;
+	}
+
+	public double getMin() {
+		return min;
+	}
+
+	public double getMax() {
+		return max;
+	}
+
+	/**
+	 * @return the sample standard deviation
+	 */
+	public double getStandardDeviation() {
+		return count < 2 ? 0 : Math.sqrt(squares / (count - 1));
+	}
+
+	/**
+	 * @param confidence the confidence level, 0.95 for example
+	 * @return the half width of the Student t confidence interval of the mean, infinite
+	 *         until there are two observations
+	 */
+	public double halfWidth(double confidence) {
+		if (count < 2) {
+			return Double.POSITIVE_INFINITY;
+		}
+		return tQuantile(1 - (1 - confidence) / 2, count - 1) * getStandardDeviation() / Math.sqrt(count);
+	}
+
+	/**
+	 * @return the half width relative to the mean, the precision of the estimate
+	 */
+	public double relativeHalfWidth(double confidence) {
+		return mean == 0 ? Double.POSITIVE_INFINITY : halfWidth(confidence) / Math.abs(mean);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%.2f +/- %.2f (n=%d, sd %.2f, min %.2f, max %.2f)", mean, halfWidth(0.95), count,
+				getStandardDeviation(), min, max);
+	}
+
+	/**
+	 * The Student t quantile: exact for up to 30 degrees of freedom, where the Cornish-Fisher
+	 * expansion of the normal quantile is poor (9.7 rather than 12.7 at 95% for one degree of
+	 * freedom), and from the expansion above that
+	 * @param p the cumulative probability
+	 * @param degrees the degrees of freedom
+	 */
+	static double tQuantile(double p, long degrees) {
+		if (p < 0.5) {
+			return -tQuantile(1 - p, degrees);
+		}
+		if (degrees <= 30) {
+			// bisect P(|T| < t) = 2p - 1
+			double target = 2 * p - 1;
+			double lo = 0;
+			double hi = 1;
+			while (tCentral(hi, degrees) < target) {
+				lo = hi;
+				hi *= 2;
+			}
+			for (int i = 0; i < 100 && hi - lo > 1e-12 * hi; i++) {
+				double mid = (lo + hi) / 2;
+				if (tCentral(mid, degrees) < target) {
+					lo = mid;
+				} else {
+					hi = mid;
+				}
+			}
+			return (lo + hi) / 2;
+		}
+		double z = normalQuantile(p);
+		double z3 = z * z * z;
+		double z5 = z3 * z * z;
+		double v = degrees;
+		return z + (z3 + z) / (4 * v) + (5 * z5 + 16 * z3 + 3 * z) / (96 * v * v)
+				+ (3 * z5 * z * z + 19 * z5 + 17 * z3 - 15 * z) / (384 * v * v * v);
+	}
+
+	/**
+	 * P(|T| < t) for a whole number of degrees of freedom, exactly (Abramowitz and Stegun
+	 * 26.7.3 and 26.7.4)
+	 */
+	static double tCentral(double t, long degrees) {
+		double theta = Math.atan(t / Math.sqrt(degrees));
+		double cos2 = Math.cos(theta) * Math.cos(theta);
+		if (degrees % 2 == 1) {
+			if (degrees == 1) {
+				return 2 * theta / Math.PI;
+			}
+			double term = Math.cos(theta);
+			double sum = term;
+			for (long k = 3; k <= degrees - 2; k += 2) {
+				term *= cos2 * (k - 1) / k;
+				sum += term;
+			}
+			return 2 / Math.PI * (theta + Math.sin(theta) * sum);
+		}
+		double term = 1;
+		double sum = 1;
+		for (long k = 2; k <= degrees - 2; k += 2) {
+			term *= cos2 * (k - 1) / k;
+			sum += term;
+		}
+		return Math.sin(theta) * sum;
+	}
+
+	/**
+	 * The standard normal quantile (Abramowitz and Stegun 26.2.23, error below 4.5e-4)
+	 */
+	static double normalQuantile(double p) {
+		if (p < 0.5) {
+			return -normalQuantile(1 - p);
+		}
+		double t = Math.sqrt(-2 * Math.log(1 - p));
+		return t - (2.515517 + 0.802853 * t + 0.010328 * t * t)
+				/ (1 + 1.432788 * t + 0.189269 * t * t + 0.001308 * t * t * t);
+	}
+}
@@ -0,0 +1,477 @@
+package experiments;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+
+import automail.Configuration;
+import automail.SimulationResult;
+
+/**
+ * Runs a sweep of seeds x configurations x strategies as jobs in a spool directory, so the
+ * simulations can be shared between worker JVMs on one machine or on several machines
+ * that share the directory. No other service is needed: a job is a properties file in
+ * pending/, a worker claims it by renaming it into claimed/ (only one rename can succeed),
+ * keeps touching it while the simulation runs, and writes the result into done/.
+ *
+ * The coordinator writes the jobs, starts and restarts local workers, puts back any job
+ * whose worker has stopped touching it, gives up on a job after a few attempts (moving it
+ * into failed/) and finally summarises done/. Workers that exit with an error before
+ * claiming anything are restarted less and less often, and after a few in a row the sweep
+ * stops with the last one's log, as they would never get anywhere. A job is named by a hash
+ * of its settings, so jobs already done are not run again and a sweep can be resumed by
+ * running the coordinator again, while a changed sweep in the same spool gets new jobs.
+ *
+ * Usage: Sweep [coordinate] | Sweep work spoolDirectory
+ */
+public class Sweep {
+
+	private static final String PENDING = "pending";
+	private static final String CLAIMED = "claimed";
+	private static final String DONE = "done";
+	private static final String FAILED = "failed";
+	private static final String LOGS = "logs";
+	/** Separates a claimed job's name from the worker that claimed it */
+	private static final String BY = "@";
+	/** Starts each line a worker logs when it claims a job */
+	private static final String CLAIMED_LOG = "Claimed ";
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length >= 2 && args[0].equals("work")) {
+			new Worker(Paths.get(args[1])).run();
+			return;
+		}
+		Configuration config = Configuration.load("automail.properties");
+		Sweep sweep = new Sweep(config, Paths.get(config.properties.getProperty("Sweep_Spool", "sweep")));
+		sweep.writeJobs(config.properties.getProperty("Sweep_Configs", "").split("\\|"),
+				config.properties.getProperty("Sweep_Strategies", "").split("\\|"),
+				config.getInt("Sweep_Seeds", 10));
+		sweep.coordinate(config.getInt("Sweep_Workers", Runtime.getRuntime().availableProcessors()),
+				config.properties.getProperty("Sweep_Worker_Heap", ""));
+		sweep.printResults();
+	}
+
+	private final Configuration config;
+	private final Path spool;
+	private final long timeoutMillis;
+	private final long pollMillis;
+	private final int maxAttempts;
+	/** How many workers in a row may exit with an error before claiming a job */
+	private final int maxStartFailures;
+	/** How many times each job has been put back after its worker stopped */
+	private final Map<String, Integer> attempts = new HashMap<>();
+	/** The names of this sweep's jobs; the spool may hold others from earlier sweeps */
+	private final Set<String> jobs = new LinkedHashSet<>();
+
+	/**
+	 * @param config the settings shared by every job, and the sweep's own settings
+	 * @param spool the directory shared with the workers
+	 */
+	public Sweep(Configuration config, Path spool) throws IOException {
+		this.config = config;
+		this.spool = spool;
+		this.timeoutMillis = config.getInt("Sweep_Timeout", 60000);
+		this.pollMillis = config.getInt("Sweep_Poll", 500);
+		this.maxAttempts = config.getInt("Sweep_Max_Attempts", 3);
+		this.maxStartFailures = config.getInt("Sweep_Max_Start_Failures", 5);
+		for (String directory : new String[] { PENDING, CLAIMED, DONE, FAILED, LOGS }) {
+			Files.createDirectories(spool.resolve(directory));
+		}
+	}
+
+	/**
+	 * Writes a job for every seed of every configuration with every strategy, except those
+	 * with the same settings already in the spool
+	 * @param configs the settings replaced for each configuration, as Trials.withOverrides
+	 * @param strategies the settings replaced for each strategy
+	 */
+	public void writeJobs(String[] configs, String[] strategies, int seeds) throws IOException {
+		int firstSeed = config.seed == null ? 1 : config.seed;
+		for (String settings : configs) {
+			for (String strategy : strategies) {
+				for (int s = 0; s < seeds; s++) {
+					Properties job = new Properties();
+					job.putAll(config.properties);
+					job.putAll(overrides(settings));
+					job.putAll(overrides(strategy));
+					job.setProperty("Seed", Integer.toString(firstSeed + s));
+					job.setProperty("Sweep_Label", String.format("[%s] [%s]", settings.trim(), strategy.trim()));
+					String name = name(job);
+					if (!jobs.add(name) || exists(name)) {
+						continue;
+					}
+					// written aside and renamed, so a worker never sees half a job
+					Path temporary = spool.resolve(name + ".tmp");
+					try (OutputStream out = Files.newOutputStream(temporary)) {
+						job.store(out, null);
+					}
+					move(temporary, spool.resolve(PENDING).resolve(name));
+				}
+			}
+		}
+		System.out.printf("%d jobs in %s%n", jobs.size(), spool);
+	}
+
+	/**
+	 * @return "job-" and a hash of the settings a job runs with and its label, leaving out
+	 *         the other sweep settings, which do not change its result
+	 */
+	private static String name(Properties job) {
+		StringBuilder content = new StringBuilder();
+		for (Map.Entry<String, String> setting : new TreeMap<>(toMap(job)).entrySet()) {
+			if (!setting.getKey().startsWith("Sweep_") || setting.getKey().equals("Sweep_Label")) {
+				content.append(setting.getKey()).append('=').append(setting.getValue().trim()).append('\n');
+			}
+		}
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(content.toString().getBytes(StandardCharsets.UTF_8));
+			StringBuilder name = new StringBuilder("job-");
+			for (int i = 0; i < 8; i++) name.append(String.format("%02x", digest[i]));
+			return name.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e); // every JVM has SHA-256
+		}
+	}
+
+	private static Map<String, String> toMap(Properties properties) {
+		Map<String, String> map = new HashMap<>();
+		for (String key : properties.stringPropertyNames()) map.put(key, properties.getProperty(key));
+		return map;
+	}
+
+	private boolean exists(String name) throws IOException {
+		if (Files.exists(spool.resolve(DONE).resolve(name)) || Files.exists(spool.resolve(PENDING).resolve(name))
+				|| Files.exists(spool.resolve(FAILED).resolve(name))) {
+			return true;
+		}
+		try (DirectoryStream<Path> claimed = Files.newDirectoryStream(spool.resolve(CLAIMED), name + BY + "*")) {
+			return claimed.iterator().hasNext();
+		}
+	}
+
+	private static Properties overrides(String settings) {
+		Properties properties = new Properties();
+		for (String setting : settings.split(";")) {
+			int equals = setting.indexOf('=');
+			if (equals > 0) {
+				properties.setProperty(setting.substring(0, equals).trim(), setting.substring(equals + 1).trim());
+			}
+		}
+		return properties;
+	}
+
+	/**
+	 * Runs local workers until every job is done or failed
+	 * @param workers how many worker JVMs to keep running here, 0 if they run elsewhere
+	 * @param heap the worker JVMs' maximum heap, such as 2g, or empty for the default
+	 */
+	public void coordinate(int workers, String heap) throws IOException, InterruptedException {
+		// each running worker's log
+		Map<Process, Path> processes = new LinkedHashMap<>();
+		int started = 0;
+		int startFailures = 0; // in a row
+		long nextStart = 0;
+		try {
+			while (finished() < jobs.size()) {
+				requeueStalled();
+				// replace workers that have stopped while work is left
+				for (Iterator<Map.Entry<Process, Path>> i = processes.entrySet().iterator(); i.hasNext();) {
+					Map.Entry<Process, Path> worker = i.next();
+					if (worker.getKey().isAlive()) {
+						continue;
+					}
+					i.remove();
+					if (worker.getKey().exitValue() == 0 || claimedAny(worker.getValue())) {
+						startFailures = 0;
+					} else if (++startFailures >= maxStartFailures) {
+						System.out.printf("%d workers in a row exited before claiming a job, the last log %s:%n",
+								startFailures, worker.getValue());
+						for (String line : Files.readAllLines(worker.getValue())) {
+							System.out.println("    " + line);
+						}
+						throw new IllegalStateException("Workers cannot start, see " + worker.getValue());
+					} else {
+						// back off, doubling the wait each time
+						nextStart = System.currentTimeMillis() + (pollMillis << Math.min(startFailures, 10));
+					}
+				}
+				while (processes.size() < workers && count(PENDING) > processes.size()
+						&& System.currentTimeMillis() >= nextStart) {
+					Path log = spool.resolve(LOGS).resolve("worker-" + started + ".log");
+					processes.put(startWorker(log, heap), log);
+					started++;
+				}
+				Thread.sleep(pollMillis);
+			}
+		} finally {
+			for (Process process : processes.keySet()) {
+				process.destroy();
+			}
+		}
+		System.out.printf("%d workers started, %d jobs put back after a worker stopped%n", started,
+				attempts.values().stream().mapToInt(Integer::intValue).sum());
+	}
+
+	/**
+	 * @return whether a worker's log shows it claimed a job
+	 */
+	private static boolean claimedAny(Path log) throws IOException {
+		for (String line : Files.readAllLines(log)) {
+			if (line.startsWith(CLAIMED_LOG)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private Process startWorker(Path log, String heap) throws IOException {
+		List<String> command = new ArrayList<>();
+		command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+		if (!heap.trim().isEmpty()) {
+			command.add("-Xmx" + heap.trim());
+		}
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(Sweep.class.getName());
+		command.add("work");
+		command.add(spool.toString());
+		return new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log.toFile()).start();
+	}
+
+	/**
+	 * Puts back the jobs whose workers have not touched them within the timeout
+	 */
+	private void requeueStalled() throws IOException {
+		long now = System.currentTimeMillis();
+		try (DirectoryStream<Path> claimed = Files.newDirectoryStream(spool.resolve(CLAIMED))) {
+			for (Path path : claimed) {
+				String file = path.getFileName().toString();
+				String name = file.substring(0, file.indexOf(BY));
+				try {
+					if (now - Files.getLastModifiedTime(path).toMillis() < timeoutMillis
+							|| Files.exists(spool.resolve(DONE).resolve(name))) {
+						continue;
+					}
+					int attempt = attempts.merge(name, 1, Integer::sum);
+					move(path, spool.resolve(attempt >= maxAttempts ? FAILED : PENDING).resolve(name));
+					System.out.printf("%s: worker %s stopped, %s%n", name, file.substring(file.indexOf(BY) + 1),
+							attempt >= maxAttempts ? "giving up" : "trying again");
+				} catch (NoSuchFileException e) {
+					// finished meanwhile
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return how many of this sweep's jobs are done or failed, each counted once: a job can
+	 *         be given up on while a slow worker is still finishing it
+	 */
+	private int finished() {
+		int finished = 0;
+		for (String name : jobs) {
+			if (Files.exists(spool.resolve(DONE).resolve(name)) || Files.exists(spool.resolve(FAILED).resolve(name))) {
+				finished++;
+			}
+		}
+		return finished;
+	}
+
+	private int count(String directory) throws IOException {
+		int count = 0;
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(spool.resolve(directory))) {
+			for (Path path : files) {
+				if (!path.getFileName().toString().endsWith(".tmp")) count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Prints the mean results of every configuration and strategy of this sweep
+	 */
+	public void printResults() throws IOException {
+		Map<String, RunningStatistics[]> results = new TreeMap<>();
+		Map<String, Integer> unable = new TreeMap<>();
+		int failed = 0;
+		for (String name : jobs) {
+			Path path = spool.resolve(DONE).resolve(name);
+			if (!Files.exists(path)) {
+				if (Files.exists(spool.resolve(FAILED).resolve(name))) {
+					failed++;
+				}
+				continue;
+			}
+			Properties result = load(path);
+			String label = result.getProperty("Sweep_Label");
+			RunningStatistics[] statistics = results.computeIfAbsent(label,
+					k -> new RunningStatistics[] { new RunningStatistics(), new RunningStatistics(),
+							new RunningStatistics() });
+			if (!result.getProperty("Status").equals("complete")) {
+				unable.merge(label, 1, Integer::sum);
+				continue;
+			}
+			statistics[0].add(Double.parseDouble(result.getProperty("Score")));
+			statistics[1].add(Double.parseDouble(result.getProperty("Final_Time")));
+			statistics[2].add(Double.parseDouble(result.getProperty("Mean_Latency")));
+		}
+		for (Map.Entry<String, RunningStatistics[]> entry : results.entrySet()) {
+			RunningStatistics[] statistics = entry.getValue();
+			System.out.printf("%s: %d runs, %d unable | score %.2f +/- %.2f | time %.1f | latency %.1f%n",
+					entry.getKey(), statistics[0].getCount(), unable.getOrDefault(entry.getKey(), 0),
+					statistics[0].getMean(), statistics[0].halfWidth(0.95), statistics[1].getMean(),
+					statistics[2].getMean());
+		}
+		System.out.printf("%d jobs failed%n", failed);
+	}
+
+	private static Properties load(Path path) throws IOException {
+		Properties properties = new Properties();
+		try (InputStream in = Files.newInputStream(path)) {
+			properties.load(in);
+		}
+		return properties;
+	}
+
+	private static void move(Path from, Path to) throws IOException {
+		try {
+			Files.move(from, to, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(from, to);
+		}
+	}
+
+	/**
+	 * Claims and runs jobs until none are left
+	 */
+	private static class Worker {
+
+		private final Path spool;
+		private final String id;
+
+		Worker(Path spool) {
+			this.spool = spool;
+			// the process name is pid@host, which also tells the machines apart
+			this.id = ManagementFactory.getRuntimeMXBean().getName().replace(BY, "-");
+		}
+
+		void run() throws IOException, InterruptedException {
+			int jobs = 0;
+			Path claimed;
+			while ((claimed = claim()) != null) {
+				System.out.println(CLAIMED_LOG + claimed.getFileName());
+				System.out.flush();
+				runJob(claimed);
+				jobs++;
+			}
+			System.out.printf("Worker %s ran %d jobs%n", id, jobs);
+		}
+
+		/**
+		 * @return the job this worker renamed into claimed/, or null if none are pending
+		 */
+		private Path claim() throws IOException {
+			List<Path> pending = new ArrayList<>();
+			try (DirectoryStream<Path> files = Files.newDirectoryStream(spool.resolve(PENDING))) {
+				for (Path path : files) pending.add(path);
+			}
+			pending.sort(null);
+			for (Path path : pending) {
+				Path claimed = spool.resolve(CLAIMED).resolve(path.getFileName() + BY + id);
+				try {
+					// the rename keeps the time the job was written, which may look stalled already,
+					// so touch it first: touched after the rename, the coordinator could take it back
+					Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+					Files.move(path, claimed, StandardCopyOption.ATOMIC_MOVE);
+					return claimed;
+				} catch (NoSuchFileException | FileAlreadyExistsException e) {
+					// another worker got there first
+				}
+			}
+			return null;
+		}
+
+		private void runJob(Path claimed) throws IOException, InterruptedException {
+			String file = claimed.getFileName().toString();
+			String name = file.substring(0, file.indexOf(BY));
+			Properties job = load(claimed);
+			Properties result = new Properties();
+			result.setProperty("Sweep_Label", job.getProperty("Sweep_Label"));
+			result.setProperty("Seed", job.getProperty("Seed"));
+			result.setProperty("Worker", id);
+
+			// the heartbeat: the coordinator puts the job back if the claim stops changing
+			long heartbeat = Long.parseLong(job.getProperty("Sweep_Timeout", "60000").trim()) / 4;
+			Thread touch = new Thread(() -> {
+				try {
+					while (true) {
+						Thread.sleep(heartbeat);
+						Files.setLastModifiedTime(claimed, FileTime.fromMillis(System.currentTimeMillis()));
+					}
+				} catch (InterruptedException | IOException e) {
+					// finished, or the job was taken back
+				}
+			});
+			touch.setDaemon(true);
+			touch.start();
+			try {
+				SimulationResult outcome = Trials.run(new Configuration(job));
+				if (outcome == null) {
+					result.setProperty("Status", "unable to complete");
+				} else {
+					result.setProperty("Status", "complete");
+					result.setProperty("Final_Time", Integer.toString(outcome.finalTime));
+					result.setProperty("Score", Double.toString(outcome.score));
+					result.setProperty("Delivered", Integer.toString(outcome.delivered));
+					result.setProperty("Mean_Latency", Double.toString(outcome.meanLatency));
+					for (Map.Entry<String, Double> objective : outcome.objectives.entrySet()) {
+						result.setProperty("Objective_" + objective.getKey(), Double.toString(objective.getValue()));
+					}
+				}
+			} catch (RuntimeException e) {
+				// running it again would fail the same way
+				StringWriter trace = new StringWriter();
+				e.printStackTrace(new PrintWriter(trace));
+				result.setProperty("Status", "error");
+				result.setProperty("Error", trace.toString());
+			} finally {
+				touch.interrupt();
+				touch.join();
+			}
+			Path temporary = spool.resolve(DONE).resolve(name + "." + id + ".tmp");
+			try (OutputStream out = Files.newOutputStream(temporary)) {
+				result.store(out, null);
+			}
+			Files.move(temporary, spool.resolve(DONE).resolve(name), StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+			Files.deleteIfExists(claimed);
+			// given up on meanwhile, but finished after all
+			Files.deleteIfExists(spool.resolve(FAILED).resolve(name));
+		}
+	}
+}
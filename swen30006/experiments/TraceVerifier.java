@@ -0,0 +1,131 @@
+package experiments;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import automail.Configuration;
+import automail.Simulation;
+import automail.TraceDigest;
+import exceptions.ExcessiveDeliveryException;
+import exceptions.ItemTooHeavyException;
+
+/**
+ * Checks that two engines produce the same schedule. Each engine is the configuration with
+ * some settings replaced (such as "MailPool=strategies.AgingMailPool"), and every seed of
+ * every test configuration runs through both engines in parallel, keeping only a trace
+ * digest. Where the digests disagree the first differing time step is reported, so that
+ * only that step needs a closer look.
+ */
+public class TraceVerifier {
+
+	/** One engine's run of one case */
+	private static class Run {
+		TraceDigest trace;
+		int finalTime;
+		String failure; // null if the run completed
+	}
+
+	private final Configuration config;
+	private final String engineA;
+	private final String engineB;
+	private final int maxTicks;
+	private final int threads;
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		Configuration config = Configuration.load("automail.properties");
+		TraceVerifier verifier = new TraceVerifier(config, config.properties.getProperty("Verify_Engine_A", ""),
+				config.properties.getProperty("Verify_Engine_B", ""), config.getInt("Verify_Max_Ticks", 100000),
+				config.getInt("Verify_Threads", Runtime.getRuntime().availableProcessors()));
+		String[] configs = config.properties.getProperty("Verify_Configs", "").split("\\|");
+		int firstSeed = config.seed == null ? 1 : config.seed;
+		int differences = verifier.verify(configs, firstSeed, config.getInt("Verify_Seeds", 10));
+		System.exit(differences == 0 ? 0 : 1);
+	}
+
+	/**
+	 * @param config the settings shared by every case
+	 * @param engineA the settings replaced for the first engine, separated by semicolons
+	 * @param engineB the settings replaced for the second engine
+	 * @param maxTicks where runs with continuous arrivals stop
+	 * @param threads how many simulations run at once
+	 */
+	public TraceVerifier(Configuration config, String engineA, String engineB, int maxTicks, int threads) {
+		this.config = config;
+		this.engineA = engineA;
+		this.engineB = engineB;
+		this.maxTicks = maxTicks;
+		this.threads = threads;
+	}
+
+	/**
+	 * Runs every seed of every configuration through both engines and prints each case
+	 * @param configs the settings replaced for each test configuration
+	 * @return how many cases differed
+	 */
+	public int verify(String[] configs, int firstSeed, int seeds) throws InterruptedException {
+		System.out.printf("Engine A: [%s] Engine B: [%s]%n", engineA, engineB);
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			List<String> cases = new ArrayList<>();
+			List<Future<Run>> runsA = new ArrayList<>();
+			List<Future<Run>> runsB = new ArrayList<>();
+			int differences = 0;
+			for (String settings : configs) {
+				for (int s = 0; s < seeds; s++) {
+					Configuration base = Trials.withOverrides(Trials.withSeed(config, firstSeed + s), settings);
+					cases.add(String.format("Seed %d [%s]", firstSeed + s, settings.trim()));
+					runsA.add(submit(pool, Trials.withOverrides(base, engineA)));
+					runsB.add(submit(pool, Trials.withOverrides(base, engineB)));
+				}
+			}
+			for (int c = 0; c < cases.size(); c++) {
+				Run a = runsA.get(c).get();
+				Run b = runsB.get(c).get();
+				int tick = a.trace.firstDifference(b.trace);
+				if (tick < 0 && equal(a.failure, b.failure)) {
+					System.out.printf("%s: same %s%s%n", cases.get(c), a.trace,
+							a.failure == null ? "" : ", both " + a.failure);
+				} else {
+					differences++;
+					System.out.printf("%s: DIFFERENT from time step %d | A %s at %d%s | B %s at %d%s%n", cases.get(c),
+							tick, a.trace, a.finalTime, a.failure == null ? "" : " " + a.failure, b.trace,
+							b.finalTime, b.failure == null ? "" : " " + b.failure);
+				}
+			}
+			System.out.printf("%d of %d cases differ%n", differences, cases.size());
+			return differences;
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private Future<Run> submit(ExecutorService pool, Configuration config) {
+		config.traceDigest = true;
+		return pool.submit((Callable<Run>) () -> {
+			Simulation simulation = new Simulation(config, false);
+			Run run = new Run();
+			try {
+				while (!simulation.isComplete() && simulation.getClock().Time() < maxTicks) {
+					simulation.step();
+				}
+			} catch (ExcessiveDeliveryException | ItemTooHeavyException e) {
+				run.failure = e.getClass().getSimpleName();
+			}
+			run.trace = simulation.getTrace();
+			run.finalTime = simulation.getClock().Time();
+			return run;
+		});
+	}
+
+	private static boolean equal(String a, String b) {
+		return a == null ? b == null : a.equals(b);
+	}
+}
@@ -0,0 +1,91 @@
+package experiments;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import automail.Configuration;
+import automail.Simulation;
+import automail.SimulationResult;
+import exceptions.ExcessiveDeliveryException;
+import exceptions.ItemTooHeavyException;
+
+/**
+ * Runs quiet simulations for the experiments, one per task so they can share a thread pool
+ */
+public class Trials {
+
+	/**
+	 * @return the result of the simulation, or null if it was unable to complete
+	 */
+	public static SimulationResult run(Configuration config) {
+		try {
+			return new Simulation(config, false).run();
+		} catch (ExcessiveDeliveryException | ItemTooHeavyException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Runs every configuration on the pool and waits for them all
+	 * @return the results in the same order, null for simulations unable to complete
+	 */
+	public static List<SimulationResult> runAll(ExecutorService pool, List<Configuration> configs)
+			throws InterruptedException {
+		List<Future<SimulationResult>> futures = new ArrayList<>(configs.size());
+		for (Configuration config : configs) {
+			futures.add(pool.submit((Callable<SimulationResult>) () -> run(config)));
+		}
+		List<SimulationResult> results = new ArrayList<>(configs.size());
+		for (Future<SimulationResult> future : futures) {
+			try {
+				results.add(future.get());
+			} catch (ExecutionException e) {
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * @return a copy of the configuration using the given seed
+	 */
+	public static Configuration withSeed(Configuration config, int seed) {
+		Configuration copy = config.copy();
+		copy.seed = seed;
+		return copy;
+	}
+
+	/**
+	 * @param overrides settings separated by semicolons, such as "Robots=10;Floors=50"
+	 * @return a copy of the configuration read again with the settings replaced; the seed
+	 *         is kept unless the settings include one
+	 */
+	public static Configuration withOverrides(Configuration config, String overrides) {
+		Properties properties = new Properties();
+		properties.putAll(config.properties);
+		Integer seed = config.seed;
+		for (String setting : overrides.split(";")) {
+			if (setting.trim().isEmpty()) {
+				continue;
+			}
+			int equals = setting.indexOf('=');
+			if (equals < 0) {
+				throw new IllegalArgumentException("Expected key=value, not " + setting);
+			}
+			String key = setting.substring(0, equals).trim();
+			String value = setting.substring(equals + 1).trim();
+			properties.setProperty(key, value);
+			if (key.equals("Seed")) {
+				seed = Integer.valueOf(value);
+			}
+		}
+		Configuration copy = new Configuration(properties);
+		copy.seed = seed;
+		return copy;
+	}
+}
@@ -0,0 +1,182 @@
+package experiments;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+import automail.Configuration;
+import automail.Simulation;
+import automail.SimulationResult;
+import automail.Snapshot;
+import exceptions.ExcessiveDeliveryException;
+import exceptions.ItemTooHeavyException;
+
+/**
+ * Answers what-if questions about a simulation without rerunning it from the start. The
+ * baseline run keeps a checkpoint every few time steps, which shares the generated mail
+ * with the baseline rather than copying it; a change taking effect at some time step
+ * resumes the latest checkpoint before it, steps on to that time, and only then applies the
+ * change in place: more robots or another pool policy (Simulation.reconfigure, which moves
+ * every waiting item to the new pools) or a new priority for an item that has not arrived
+ * yet. Everything before the change is exactly the baseline, so the result is the same as
+ * a full run with the change, for a fraction of the cost when the change is late.
+ */
+public class WhatIf {
+
+	private final Configuration config;
+	private final int interval;
+	/** The baseline's checkpoints by time */
+	private final TreeMap<Integer, Snapshot> checkpoints = new TreeMap<>();
+	private SimulationResult baseline;
+	private long baselineNanos;
+	private long checkpointBytes = 0;
+	/** The time steps simulated by the last what-if run, from its checkpoint */
+	private int lastTicks;
+	private int lastCheckpoint;
+	private long lastNanos;
+
+	/**
+	 * Properties: What_If_Tick, the time step the change takes effect; What_If_Overrides,
+	 * settings such as "Robots=6" or "MailPool=strategies.AgingMailPool" (see
+	 * Trials.withOverrides); What_If_Priority, an item number and its new priority level
+	 * such as "17:100"; and What_If_Interval, the time steps between checkpoints. The change
+	 * is also run from the start, to check the result and measure what the what-if saved.
+	 */
+	public static void main(String[] args)
+			throws IOException, ExcessiveDeliveryException, ItemTooHeavyException {
+		Configuration config = Configuration.load("automail.properties");
+		if (args.length > 0) {
+			config.seed = Integer.parseInt(args[0]);
+		}
+		String tick = config.properties.getProperty("What_If_Tick");
+		if (tick == null) {
+			System.out.println("Set What_If_Tick to the time step the change takes effect");
+			return;
+		}
+		String overrides = config.properties.getProperty("What_If_Overrides", "").trim();
+		Configuration changed = overrides.isEmpty() ? null : Trials.withOverrides(config, overrides);
+		int item = -1;
+		int priorityLevel = 0;
+		String priority = config.properties.getProperty("What_If_Priority", "").trim();
+		if (!priority.isEmpty()) {
+			String[] parts = priority.split(":");
+			item = Integer.parseInt(parts[0].trim());
+			priorityLevel = Integer.parseInt(parts[1].trim());
+		}
+
+		WhatIf whatIf = new WhatIf(config, config.getInt("What_If_Interval", 100));
+		SimulationResult base = whatIf.runBaseline();
+		System.out.printf("Baseline:  %s%n", base);
+		System.out.printf("    %d time steps in %.1f ms, with %d checkpoints of %d bytes in all%n", base.finalTime,
+				whatIf.baselineNanos / 1e6, whatIf.checkpoints.size(), whatIf.checkpointBytes);
+
+		SimulationResult result;
+		try {
+			result = whatIf.run(Integer.parseInt(tick.trim()), changed, item, priorityLevel);
+		} catch (IllegalArgumentException e) {
+			System.out.println("Cannot apply the change: " + e.getMessage());
+			return;
+		}
+		System.out.printf("What if:   %s%n", result);
+		System.out.printf("    %d time steps from the checkpoint at %d in %.1f ms%n", whatIf.lastTicks,
+				whatIf.lastCheckpoint, whatIf.lastNanos / 1e6);
+
+		long start = System.nanoTime();
+		SimulationResult full = whatIf.rerun(Integer.parseInt(tick.trim()), changed, item, priorityLevel);
+		long nanos = System.nanoTime() - start;
+		boolean same = full.finalTime == result.finalTime && full.score == result.score
+				&& full.delivered == result.delivered;
+		System.out.printf("Full run:  %s%n", full);
+		System.out.printf("    %d time steps in %.1f ms; the what-if run took %.1f%% of its time steps, %.1f%% of its time%n",
+				full.finalTime, nanos / 1e6, 100.0 * whatIf.lastTicks / Math.max(1, full.finalTime),
+				100.0 * whatIf.lastNanos / Math.max(1, nanos));
+		System.out.println(same ? "The same as the what-if run" : "DIFFERENT from the what-if run");
+		if (!same) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * @param config the baseline, which must generate all of its mail up front
+	 * @param interval the time steps between checkpoints
+	 */
+	public WhatIf(Configuration config, int interval) {
+		this.config = config;
+		this.interval = Math.max(1, interval);
+	}
+
+	/**
+	 * Runs the baseline, keeping a checkpoint every interval time steps
+	 */
+	public SimulationResult runBaseline() throws ExcessiveDeliveryException, ItemTooHeavyException {
+		checkpoints.clear();
+		checkpointBytes = 0;
+		long start = System.nanoTime();
+		Simulation simulation = new Simulation(config, false);
+		while (!simulation.isComplete()) {
+			int time = simulation.getClock().Time();
+			if (time % interval == 0) {
+				Snapshot snapshot = Snapshot.checkpoint(simulation);
+				checkpoints.put(time, snapshot);
+				checkpointBytes += snapshot.size();
+			}
+			simulation.step();
+		}
+		baselineNanos = System.nanoTime() - start;
+		baseline = simulation.getResult();
+		return baseline;
+	}
+
+	/**
+	 * Runs the baseline with a change from the given time step on, from the latest checkpoint
+	 * @param tick the time step the change takes effect, from 0
+	 * @param changed the configuration from the change on, in the same building, or null to
+	 *        keep the baseline's
+	 * @param item the number of an item to change the priority of when it arrives, or -1
+	 * @param priorityLevel the item's new priority level, 0 for ordinary mail
+	 */
+	public SimulationResult run(int tick, Configuration changed, int item, int priorityLevel)
+			throws ExcessiveDeliveryException, ItemTooHeavyException {
+		if (baseline == null) {
+			throw new IllegalStateException("Run the baseline first");
+		}
+		checkTick(tick);
+		long start = System.nanoTime();
+		Map.Entry<Integer, Snapshot> checkpoint = checkpoints.floorEntry(tick);
+		Simulation simulation = checkpoint.getValue().resume(config, false);
+		SimulationResult result = finish(simulation, tick, changed, item, priorityLevel);
+		lastCheckpoint = checkpoint.getKey();
+		lastTicks = result.finalTime - lastCheckpoint;
+		lastNanos = System.nanoTime() - start;
+		return result;
+	}
+
+	/**
+	 * Runs the baseline with the change from the start, for comparison with {@link #run}
+	 */
+	public SimulationResult rerun(int tick, Configuration changed, int item, int priorityLevel)
+			throws ExcessiveDeliveryException, ItemTooHeavyException {
+		checkTick(tick);
+		return finish(new Simulation(config, false), tick, changed, item, priorityLevel);
+	}
+
+	private static void checkTick(int tick) {
+		if (tick < 0) {
+			throw new IllegalArgumentException("What_If_Tick " + tick + " is before the first time step, 0");
+		}
+	}
+
+	private SimulationResult finish(Simulation simulation, int tick, Configuration changed, int item,
+			int priorityLevel) throws ExcessiveDeliveryException, ItemTooHeavyException {
+		while (!simulation.isComplete() && simulation.getClock().Time() < tick) {
+			simulation.step();
+		}
+		if (changed != null) {
+			simulation.reconfigure(changed);
+		}
+		if (item >= 0 && !simulation.changePriority(item, priorityLevel)) {
+			throw new IllegalArgumentException("Item " + item + " has arrived by time step " + tick);
+		}
+		return simulation.run();
+	}
+}
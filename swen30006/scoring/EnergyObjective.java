@@ -0,0 +1,32 @@
+package scoring;
+
+/**
+ * The energy spent carrying the mail: each item's weight times the floors between its
+ * destination and the nearest mailroom, optionally scaled by its wait so late heavy items
+ * cost more.
+ */
+public class EnergyObjective implements Objective {
+
+	private final String name;
+	/** null to count energy alone */
+	private final PenaltyObjective wait;
+
+	/**
+	 * @param waitExponent the wait penalty the energy is weighted by, 0 for energy alone
+	 */
+	public EnergyObjective(String name, double waitExponent) {
+		this.name = name;
+		this.wait = waitExponent == 0 ? null : new PenaltyObjective(name, waitExponent);
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public double score(int wait, int priority, int weight, int floors) {
+		double energy = (double) weight * floors;
+		return this.wait == null ? energy : energy * this.wait.power(wait);
+	}
+}
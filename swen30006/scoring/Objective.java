@@ -0,0 +1,22 @@
+package scoring;
+
+/**
+ * One way of scoring deliveries, lower is better. A simulation's score under the objective
+ * is the sum of the scores of its deliveries.
+ */
+public interface Objective {
+
+	/**
+	 * @return the name the objective is reported under
+	 */
+	String getName();
+
+	/**
+	 * @param wait the time from the item's arrival to its delivery
+	 * @param priority the item's priority level, 0 for an item without priority
+	 * @param weight the item's weight
+	 * @param floors the floors between the item's destination and the nearest mailroom
+	 * @return the score of one delivery
+	 */
+	double score(int wait, int priority, int weight, int floors);
+}
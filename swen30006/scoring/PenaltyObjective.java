@@ -0,0 +1,57 @@
+package scoring;
+
+import java.util.Arrays;
+
+/**
+ * The automail score: wait^exponent * (1 + sqrt(priority)) for each delivery. The powers of
+ * the waits seen so far and the weights of the priority levels are kept in tables, so each
+ * delivery costs two array reads and a multiply.
+ */
+public class PenaltyObjective implements Objective {
+
+	/** 1 + sqrt(priority) for the priority levels items are given (up to 100) */
+	static final double[] PRIORITY_WEIGHTS = new double[101];
+	static {
+		for (int p = 0; p < PRIORITY_WEIGHTS.length; p++) {
+			PRIORITY_WEIGHTS[p] = 1 + Math.sqrt(p);
+		}
+	}
+
+	private final double exponent;
+	private final String name;
+	/** wait^exponent, filled up to the longest wait so far */
+	private double[] powers = new double[0];
+
+	public PenaltyObjective(String name, double exponent) {
+		this.name = name;
+		this.exponent = exponent;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public double score(int wait, int priority, int weight, int floors) {
+		return power(wait) * priorityWeight(priority);
+	}
+
+	/**
+	 * @return wait^exponent
+	 */
+	double power(int wait) {
+		if (wait >= powers.length) {
+			int filled = powers.length;
+			powers = Arrays.copyOf(powers, Math.max(2 * powers.length, Math.max(wait + 1, 256)));
+			for (int w = filled; w < powers.length; w++) {
+				powers[w] = Math.pow(w, exponent);
+			}
+		}
+		return powers[wait];
+	}
+
+	static double priorityWeight(int priority) {
+		return priority < PRIORITY_WEIGHTS.length ? PRIORITY_WEIGHTS[priority] : 1 + Math.sqrt(priority);
+	}
+}
@@ -0,0 +1,161 @@
+package scoring;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import automail.MailItem;
+import automail.PriorityMailItem;
+
+/**
+ * Scores every delivery under all of a simulation's objectives at once, keeping each
+ * objective's total and its breakdown by priority level. The first objective is always the
+ * automail score, wait^1.2 * (1 + sqrt(priority)), summed in delivery order so the total
+ * is exactly the score the simulation has always reported.
+ */
+public class ScoringPipeline {
+
+	/** The penalty exponent of the automail score */
+	public static final double SCORE_PENALTY = 1.2;
+	/** Priority levels 0 (no priority) to 100 are broken down, higher levels share the last */
+	private static final int LEVELS = 101;
+
+	private final Objective[] objectives;
+	private final int[] mailrooms;
+	private final double[] totals;
+	private final double[][] byPriority;
+	private final int[] deliveries = new int[LEVELS];
+
+	/**
+	 * @param objectives the extra objectives, after the automail score
+	 * @param mailrooms the floors of the building's mailrooms
+	 */
+	public ScoringPipeline(List<Objective> objectives, int[] mailrooms) {
+		this.objectives = new Objective[objectives.size() + 1];
+		this.objectives[0] = new PenaltyObjective("score", SCORE_PENALTY);
+		for (int k = 0; k < objectives.size(); k++) {
+			this.objectives[k + 1] = objectives.get(k);
+		}
+		this.mailrooms = mailrooms;
+		totals = new double[this.objectives.length];
+		byPriority = new double[this.objectives.length][LEVELS];
+	}
+
+	/**
+	 * @param spec comma separated objectives: penalty:exponent, sla:maxWait, energy or
+	 *            energy:exponent (energy weighted by the wait penalty)
+	 * @return the objectives described, for the pipeline
+	 */
+	public static List<Objective> parse(String spec) {
+		List<Objective> objectives = new ArrayList<>();
+		for (String part : spec.split(",")) {
+			String[] words = part.trim().split(":");
+			if (words[0].isEmpty()) {
+				continue;
+			}
+			switch (words[0]) {
+			case "penalty":
+				objectives.add(new PenaltyObjective("penalty^" + words[1], Double.parseDouble(words[1])));
+				break;
+			case "sla":
+				objectives.add(new SlaObjective("sla<=" + words[1], Integer.parseInt(words[1])));
+				break;
+			case "energy":
+				objectives.add(words.length == 1 ? new EnergyObjective("energy", 0)
+						: new EnergyObjective("energy*wait^" + words[1], Double.parseDouble(words[1])));
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown objective " + part);
+			}
+		}
+		return objectives;
+	}
+
+	/**
+	 * Scores a delivery under every objective
+	 * @return its automail score
+	 */
+	public double deliver(MailItem mailItem, int wait) {
+		int priority = (mailItem instanceof PriorityMailItem) ? ((PriorityMailItem) mailItem).getPriorityLevel() : 0;
+		int floors = Integer.MAX_VALUE;
+		for (int mailroom : mailrooms) {
+			floors = Math.min(floors, Math.abs(mailItem.getDestFloor() - mailroom));
+		}
+		int level = Math.min(priority, LEVELS - 1);
+		deliveries[level]++;
+		double score = 0;
+		for (int k = 0; k < objectives.length; k++) {
+			double s = objectives[k].score(wait, priority, mailItem.getWeight(), floors);
+			totals[k] += s;
+			byPriority[k][level] += s;
+			if (k == 0) {
+				score = s;
+			}
+		}
+		return score;
+	}
+
+	/**
+	 * @return the automail score
+	 */
+	public double getScore() {
+		return totals[0];
+	}
+
+	/**
+	 * @return every objective's total by name, the automail score first
+	 */
+	public Map<String, Double> getTotals() {
+		Map<String, Double> result = new LinkedHashMap<>();
+		for (int k = 0; k < objectives.length; k++) {
+			result.put(objectives[k].getName(), totals[k]);
+		}
+		return result;
+	}
+
+	/**
+	 * Prints each objective's total and its share from each priority level delivered, or
+	 * nothing if the automail score is the only objective
+	 */
+	public void printBreakdown() {
+		if (objectives.length == 1) {
+			return;
+		}
+		for (int k = 0; k < objectives.length; k++) {
+			System.out.printf("Objective %s: %.2f%n", objectives[k].getName(), totals[k]);
+			for (int level = 0; level < LEVELS; level++) {
+				if (deliveries[level] > 0) {
+					System.out.printf("    priority %3d%s: %5d items %14.2f%n", level,
+							level == LEVELS - 1 ? "+" : " ", deliveries[level], byPriority[k][level]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Saves the totals so far; the objectives themselves come from the configuration
+	 */
+	public void writeState(DataOutput out) throws IOException {
+		out.writeInt(objectives.length);
+		for (int k = 0; k < objectives.length; k++) {
+			out.writeDouble(totals[k]);
+			for (int level = 0; level < LEVELS; level++) out.writeDouble(byPriority[k][level]);
+		}
+		for (int level = 0; level < LEVELS; level++) out.writeInt(deliveries[level]);
+	}
+
+	public void readState(DataInput in) throws IOException {
+		if (in.readInt() != objectives.length) {
+			throw new IOException("The snapshot was scored under different objectives");
+		}
+		for (int k = 0; k < objectives.length; k++) {
+			totals[k] = in.readDouble();
+			for (int level = 0; level < LEVELS; level++) byPriority[k][level] = in.readDouble();
+		}
+		for (int level = 0; level < LEVELS; level++) deliveries[level] = in.readInt();
+	}
+}
@@ -0,0 +1,29 @@
+package scoring;
+
+/**
+ * Counts the deliveries that missed a service level, each weighted by its priority as the
+ * automail score weights it. A delivery within the level scores nothing.
+ */
+public class SlaObjective implements Objective {
+
+	private final int maxWait;
+	private final String name;
+
+	/**
+	 * @param maxWait the longest wait from arrival to delivery that meets the service level
+	 */
+	public SlaObjective(String name, int maxWait) {
+		this.name = name;
+		this.maxWait = maxWait;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public double score(int wait, int priority, int weight, int floors) {
+		return wait <= maxWait ? 0 : PenaltyObjective.priorityWeight(priority);
+	}
+}
@@ -0,0 +1,376 @@
+package strategies;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.TreeSet;
+
+import automail.Clock;
+import automail.MailItem;
+import automail.PriorityMailItem;
+import automail.Robot;
+import exceptions.ItemTooHeavyException;
+
+/**
+ * A mail pool whose items gain priority the longer they wait, so that ordinary mail is not
+ * starved by a stream of priority mail. An item's effective priority is
+ * priority + agingRate * (now - arrival); as every item ages at the same rate, ranking by
+ * priority - agingRate * arrival gives the same order at every time step, so the items are
+ * kept in a sorted index that never has to be re-sorted.
+ *
+ * With a latency target, the pool aims to deliver 99% of its items within the target. Each
+ * item has a deadline: the last time it can leave the mailroom and still be delivered within
+ * the target. Once its deadline is less than the urgency horizon away it becomes urgent, and
+ * urgent items go first, earliest deadline first, from a second index ordered by deadline.
+ * An item whose deadline has passed can no longer meet the target, so it leaves that index
+ * and waits its turn by priority; chasing lost items would only make more items miss.
+ *
+ * The horizon adapts to the latencies achieved. Every item dispatched has its delivery
+ * latency estimated from its wait and its travel; while the 99th percentile of the recent
+ * estimates is over the target the horizon grows, so deadlines take over from priority
+ * sooner, and while it is comfortably under the target the horizon shrinks back. The
+ * estimates are also kept sorted, a value in and a value out at each dispatch, so the
+ * percentile is read off rather than sorted for. Snapshots save the horizon and estimates.
+ */
+public class AgingMailPool implements IMailPool {
+
+	/** The number of recent dispatches the latency percentile is measured over */
+	private static final int LATENCY_WINDOW = 200;
+	/** The fewest dispatches measured before the horizon adapts */
+	private static final int MIN_MEASURED = 20;
+
+	private class Entry {
+		final MailItem mailItem;
+		final int team; // how many robots the item needs
+		final double rank; // effective priority less agingRate * now
+		final int deadline; // the last time it can be dispatched within the target
+		final int travel; // the time steps from the mailroom to the destination
+		final long sequence; // keeps arrival order among equals
+
+		Entry(MailItem mailItem) {
+			this.mailItem = mailItem;
+			int weight = mailItem.getWeight();
+			team = weight <= individualMaxWeight ? 1 : weight <= pairMaxWeight ? 2 : 3;
+			int priority = (mailItem instanceof PriorityMailItem) ? ((PriorityMailItem) mailItem).getPriorityLevel()
+					: 1;
+			rank = priority - agingRate * mailItem.getArrivalTime();
+			// teams move at a third of the speed
+			travel = Math.abs(mailItem.getDestFloor() - mailroom) * (team == 1 ? 1 : 3);
+			deadline = mailItem.getArrivalTime() + latencyTarget - travel;
+			sequence = nextSequence++;
+		}
+	}
+
+	/** Highest effective priority first, then the highest floor, then the first added */
+	private final Comparator<Entry> byRank = (e1, e2) -> {
+		if (e1.rank != e2.rank) {
+			return Double.compare(e2.rank, e1.rank);
+		} else if (e1.mailItem.getDestFloor() != e2.mailItem.getDestFloor()) {
+			return Integer.compare(e2.mailItem.getDestFloor(), e1.mailItem.getDestFloor());
+		}
+		return Long.compare(e1.sequence, e2.sequence);
+	};
+
+	/** Earliest deadline first, then the first added */
+	private final Comparator<Entry> byDeadline = (e1, e2) -> e1.deadline != e2.deadline
+			? Integer.compare(e1.deadline, e2.deadline) : Long.compare(e1.sequence, e2.sequence);
+
+	/** The items of each team size (index 1 to 3) by rank and by deadline */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private final TreeSet<Entry>[] ranked = new TreeSet[4];
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private final TreeSet<Entry>[] deadlines = new TreeSet[4];
+
+	/** The estimated latencies of the items dispatched most recently, a ring */
+	private final int[] latencies = new int[LATENCY_WINDOW];
+	private int latencyNext = 0;
+	private int latencyCount = 0;
+	/** The same latencies in order */
+	private final int[] sortedLatencies = new int[LATENCY_WINDOW];
+	/** How long before its deadline an item becomes urgent */
+	private int horizon;
+
+	private final LinkedList<Robot> robots;
+	private final int nrobots;
+	private final Clock clock;
+	private final int mailroom;
+	private final int individualMaxWeight;
+	private final int pairMaxWeight;
+	private final int tripleMaxWeight;
+	private final double agingRate;
+	private final int latencyTarget;
+	private long nextSequence = 0;
+
+	/**
+	 * @param nrobots
+	 *            the number of robots working from this pool
+	 * @param clock
+	 *            the clock items age by
+	 * @param mailroom
+	 *            the floor of this pool's mailroom, where deliveries start
+	 * @param individualMaxWeight
+	 *            items up to this weight are delivered by one robot
+	 * @param pairMaxWeight
+	 *            items up to this weight are delivered by a pair
+	 * @param tripleMaxWeight
+	 *            items up to this weight are delivered by three robots
+	 * @param agingRate
+	 *            the priority an item gains for every time step it waits
+	 * @param latencyTarget
+	 *            the latency from arrival to delivery that 99% of items should be within, 0
+	 *            for no target
+	 */
+	public AgingMailPool(int nrobots, Clock clock, int mailroom, int individualMaxWeight, int pairMaxWeight,
+			int tripleMaxWeight, double agingRate, int latencyTarget) {
+		if (individualMaxWeight > Robot.INDIVIDUAL_MAX_WEIGHT || pairMaxWeight > Robot.PAIR_MAX_WEIGHT
+				|| tripleMaxWeight > Robot.TRIPLE_MAX_WEIGHT || individualMaxWeight > pairMaxWeight
+				|| pairMaxWeight > tripleMaxWeight) {
+			throw new IllegalArgumentException("Weight classes must increase and stay within what robots can carry");
+		}
+		for (int team = 1; team <= 3; team++) {
+			ranked[team] = new TreeSet<>(byRank);
+			deadlines[team] = new TreeSet<>(byDeadline);
+		}
+		robots = new LinkedList<Robot>();
+		this.nrobots = nrobots;
+		this.clock = clock;
+		this.mailroom = mailroom;
+		this.individualMaxWeight = individualMaxWeight;
+		this.pairMaxWeight = pairMaxWeight;
+		this.tripleMaxWeight = tripleMaxWeight;
+		this.agingRate = agingRate;
+		this.latencyTarget = latencyTarget;
+		this.horizon = latencyTarget / 2;
+	}
+
+	@Override
+	public void addToPool(MailItem mailItem) throws ItemTooHeavyException {
+		if (mailItem.getWeight() > tripleMaxWeight) {
+			throw new ItemTooHeavyException();
+		}
+		Entry entry = new Entry(mailItem);
+		ranked[entry.team].add(entry);
+		if (latencyTarget > 0 && entry.deadline >= clock.Time()) {
+			deadlines[entry.team].add(entry);
+		}
+	}
+
+	private void remove(Entry entry) {
+		ranked[entry.team].remove(entry);
+		deadlines[entry.team].remove(entry);
+	}
+
+	/**
+	 * @param team the team size to choose from, or 0 for any
+	 * @return the item to deliver next, or null if there is none
+	 */
+	private Entry next(int team) {
+		Entry best = null;
+		boolean bestUrgent = false;
+		for (int t = 1; t <= 3; t++) {
+			if ((team != 0 && t != team) || ranked[t].isEmpty()) {
+				continue;
+			}
+			// forget the items that have already missed the target
+			while (!deadlines[t].isEmpty() && deadlines[t].first().deadline < clock.Time()) {
+				deadlines[t].pollFirst();
+			}
+			Entry candidate;
+			boolean urgent = !deadlines[t].isEmpty() && isUrgent(deadlines[t].first());
+			if (urgent) {
+				candidate = deadlines[t].first();
+			} else {
+				candidate = ranked[t].first();
+			}
+			if (best == null || (urgent && !bestUrgent) || (urgent && byDeadline.compare(candidate, best) < 0)
+					|| (!urgent && !bestUrgent && byRank.compare(candidate, best) < 0)) {
+				best = candidate;
+				bestUrgent = urgent;
+			}
+		}
+		return best;
+	}
+
+	private boolean isUrgent(Entry entry) {
+		return entry.deadline - horizon <= clock.Time();
+	}
+
+	/**
+	 * Records the latency an item dispatched now will be delivered with
+	 * @param travel the time steps from dispatch to delivery
+	 */
+	private void dispatched(Entry entry, int travel) {
+		record(clock.Time() - entry.mailItem.getArrivalTime() + travel);
+	}
+
+	private void record(int latency) {
+		if (latencyCount == LATENCY_WINDOW) {
+			// the oldest leaves the sorted latencies
+			int at = Arrays.binarySearch(sortedLatencies, 0, latencyCount, latencies[latencyNext]);
+			System.arraycopy(sortedLatencies, at + 1, sortedLatencies, at, latencyCount - at - 1);
+			latencyCount--;
+		}
+		int at = Arrays.binarySearch(sortedLatencies, 0, latencyCount, latency);
+		if (at < 0) {
+			at = -at - 1;
+		}
+		System.arraycopy(sortedLatencies, at, sortedLatencies, at + 1, latencyCount - at);
+		sortedLatencies[at] = latency;
+		latencyCount++;
+		latencies[latencyNext] = latency;
+		latencyNext = (latencyNext + 1) % LATENCY_WINDOW;
+	}
+
+	/**
+	 * Moves the urgency horizon towards meeting the target at the 99th percentile: out while
+	 * the recent latencies miss it, back in while they are under 90% of it
+	 */
+	private void adapt() {
+		int n = latencyCount;
+		if (latencyTarget <= 0 || n < MIN_MEASURED) {
+			return;
+		}
+		int p99 = sortedLatencies[(int) Math.ceil(0.99 * n) - 1];
+		int change = Math.max(1, latencyTarget / 20);
+		if (p99 > latencyTarget) {
+			horizon = Math.min(latencyTarget, horizon + change);
+		} else if (p99 < latencyTarget * 9 / 10) {
+			horizon = Math.max(0, horizon - change);
+		}
+	}
+
+	@Override
+	public void step() throws ItemTooHeavyException {
+		adapt();
+		ListIterator<Robot> i = robots.listIterator();
+		while (i.hasNext()) {
+			Entry entry = next(0);
+			if (entry == null) {
+				return;
+			}
+			if (entry.team == 1) {
+				Robot robot = i.next();
+				assert (robot.isEmpty());
+				remove(entry);
+				robot.setTeamState(false);
+				robot.setNumOfTeam(1);
+				robot.addToHand(entry.mailItem);
+				dispatched(entry, entry.travel);
+				Entry second = next(1);
+				if (second != null) {
+					remove(second);
+					robot.addToTube(second.mailItem);
+					dispatched(second, entry.travel
+							+ Math.abs(second.mailItem.getDestFloor() - entry.mailItem.getDestFloor()));
+				}
+				robot.dispatch();
+				i.remove();
+			} else if (entry.team > nrobots) {
+				throw new ItemTooHeavyException();
+			} else if (robots.size() < entry.team) {
+				return; // the most urgent item waits for its team
+			} else {
+				groupRobots(entry.team, i);
+			}
+		}
+	}
+
+	@Override
+	public void registerWaiting(Robot robot) {
+		robots.add(robot);
+	}
+
+	/**
+	 * Loads the next item needing a team of poolID robots into the next poolID robots
+	 */
+	@Override
+	public void groupRobots(int poolID, ListIterator<Robot> i) throws ItemTooHeavyException {
+		if (poolID > this.nrobots) {
+			throw new ItemTooHeavyException();
+		}
+		Entry entry = next(poolID);
+		if (entry == null || robots.size() < poolID) {
+			i.next(); // wait for more robots
+			return;
+		}
+		remove(entry);
+		dispatched(entry, entry.travel);
+		for (int k = 0; k < poolID; k++) {
+			Robot robot = i.next();
+			assert (robot.isEmpty());
+			robot.setTeamState(true);
+			robot.setNumOfTeam(poolID);
+			robot.addToHand(entry.mailItem);
+			robot.dispatch();
+			i.remove();
+		}
+	}
+
+	@Override
+	public int size() {
+		return ranked[1].size() + ranked[2].size() + ranked[3].size();
+	}
+
+	@Override
+	public int waitingRobots() {
+		return robots.size();
+	}
+
+	@Override
+	public MailItem steal() {
+		if (ranked[1].isEmpty()) {
+			return null;
+		}
+		Entry entry = ranked[1].last();
+		if (deadlines[1].contains(entry) && isUrgent(entry)) {
+			return null; // even the lowest ranked item is urgent here
+		}
+		remove(entry);
+		return entry.mailItem;
+	}
+
+	@Override
+	public List<MailItem> getItems() {
+		List<Entry> entries = new ArrayList<>(size());
+		for (int team = 1; team <= 3; team++) entries.addAll(ranked[team]);
+		entries.sort(Comparator.comparingLong(e -> e.sequence));
+		List<MailItem> items = new ArrayList<>(entries.size());
+		for (Entry entry : entries) items.add(entry.mailItem);
+		return items;
+	}
+
+	@Override
+	public List<Robot> getWaitingRobots() {
+		return new ArrayList<>(robots);
+	}
+
+	/**
+	 * Saves the urgency horizon and the recent latency estimates, oldest first
+	 */
+	@Override
+	public void writeState(DataOutput out) throws IOException {
+		out.writeInt(horizon);
+		out.writeInt(latencyCount);
+		int oldest = latencyCount == LATENCY_WINDOW ? latencyNext : 0;
+		for (int i = 0; i < latencyCount; i++) out.writeInt(latencies[(oldest + i) % LATENCY_WINDOW]);
+	}
+
+	@Override
+	public void readState(DataInput in) throws IOException {
+		// a changed target may be smaller
+		horizon = Math.min(in.readInt(), Math.max(0, latencyTarget));
+		int count = in.readInt();
+		if (count < 0 || count > LATENCY_WINDOW) {
+			throw new IOException("Corrupt latency window of " + count);
+		}
+		latencyNext = 0;
+		latencyCount = 0;
+		for (int i = 0; i < count; i++) record(in.readInt());
+	}
+}
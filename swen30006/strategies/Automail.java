@@ -1,23 +1,196 @@
-package strategies;
-
-import automail.IMailDelivery;
-import automail.Robot;
-
-public class Automail {
-	      
-    public Robot[] robots;
-    public IMailPool mailPool;
-    
-    public Automail(IMailPool mailPool, IMailDelivery delivery, int numRobots) {
-    	// Swap between simple provided strategies and your strategies here
-    	    	
-    	/** Initialize the MailPool */
-    	
-    	this.mailPool = mailPool;
-    	
-    	/** Initialize robots */
-    	robots = new Robot[numRobots];
-    	for (int i = 0; i < numRobots; i++) robots[i] = new Robot(delivery, mailPool);
-    }
-    
-}
+package strategies;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import automail.Building;
+import automail.Clock;
+import automail.Configuration;
+import automail.EventLog;
+import automail.IMailDelivery;
+import automail.MailItem;
+import automail.Robot;
+import automail.RobotFleet;
+import exceptions.ExcessiveDeliveryException;
+import exceptions.ItemTooHeavyException;
+
+public class Automail {
+
+    public Robot[] robots;
+    /** The pool of the first mailroom */
+    public IMailPool mailPool;
+    /** One pool per mailroom, in the order of the building's mailrooms */
+    public IMailPool[] mailPools;
+    /** The robots' state as arrays, null unless the configuration asks for a fleet */
+    public RobotFleet fleet;
+
+    private final int[] mailrooms;
+    /** How many robots work from each mailroom */
+    private final int[] mailroomRobots;
+    /** For each mailroom, the other mailrooms nearest first */
+    private final int[][] neighbours;
+    private final EventLog log;
+    private final int individualMaxWeight;
+    private final int pairMaxWeight;
+
+    public Automail(Building building, Clock clock, IMailDelivery delivery, EventLog log, Configuration config) {
+    	// Swap between simple provided strategies and your strategies here
+
+    	int numRobots = config.robots;
+    	this.mailrooms = building.MAILROOM_LOCATIONS;
+    	this.log = log;
+    	this.individualMaxWeight = config.individualMaxWeight;
+    	this.pairMaxWeight = config.pairMaxWeight;
+    	if (numRobots < mailrooms.length) {
+    		throw new IllegalArgumentException("Every mailroom needs at least one robot");
+    	}
+    	if (config.tripleMaxWeight < config.mailMaxWeight) {
+    		throw new IllegalArgumentException("Items up to Mail_Max_Weight " + config.mailMaxWeight
+    				+ " can arrive, but no team carries more than " + config.tripleMaxWeight);
+    	}
+
+    	/** Share the robots between the mailrooms in turn */
+    	mailroomRobots = new int[mailrooms.length];
+    	for (int i = 0; i < numRobots; i++) mailroomRobots[i % mailrooms.length]++;
+
+    	/** Initialize a pool for each mailroom */
+    	mailPools = new IMailPool[mailrooms.length];
+    	for (int k = 0; k < mailrooms.length; k++) {
+    		switch (config.mailPool) {
+    		case "strategies.MailPool":
+    		case "strategies.SimpleMailPool": // the old default name
+    			mailPools[k] = new MailPool(mailroomRobots[k], config.individualMaxWeight, config.pairMaxWeight,
+    					config.tripleMaxWeight, config.poolOrder, config.routeAwareLoading ? building.FLOORS : 0,
+    					mailrooms[k]);
+    			break;
+    		case "strategies.AgingMailPool":
+    			mailPools[k] = new AgingMailPool(mailroomRobots[k], clock, mailrooms[k], config.individualMaxWeight,
+    					config.pairMaxWeight, config.tripleMaxWeight, config.agingRate, config.latencyTarget);
+    			break;
+    		default:
+    			throw new IllegalArgumentException("Unknown MailPool " + config.mailPool);
+    		}
+    	}
+    	this.mailPool = mailPools[0];
+
+    	/** Initialize robots */
+    	robots = new Robot[numRobots];
+    	if (config.fleet) {
+    		IMailPool[] robotPools = new IMailPool[numRobots];
+    		int[] robotMailrooms = new int[numRobots];
+    		for (int i = 0; i < numRobots; i++) {
+    			robotPools[i] = mailPools[i % mailrooms.length];
+    			robotMailrooms[i] = mailrooms[i % mailrooms.length];
+    		}
+    		fleet = new RobotFleet(delivery, robotPools, log, robotMailrooms);
+    		for (int i = 0; i < numRobots; i++) robots[i] = fleet.getRobot(i);
+    	} else {
+    		for (int i = 0; i < numRobots; i++) {
+    			int k = i % mailrooms.length;
+    			robots[i] = new Robot(delivery, mailPools[k], log, i, mailrooms[k]);
+    		}
+    	}
+
+    	neighbours = new int[mailrooms.length][];
+    	for (int k = 0; k < mailrooms.length; k++) {
+    		final int floor = mailrooms[k];
+    		Integer[] others = new Integer[mailrooms.length - 1];
+    		for (int j = 0, n = 0; j < mailrooms.length; j++) {
+    			if (j != k) others[n++] = j;
+    		}
+    		Arrays.sort(others, Comparator.comparingInt(j -> Math.abs(mailrooms[j] - floor)));
+    		neighbours[k] = new int[others.length];
+    		for (int n = 0; n < others.length; n++) neighbours[k][n] = others[n];
+    	}
+    }
+
+    /**
+     * Sends a newly arrived item to the mailroom nearest its destination that has enough
+     * robots to carry it
+     * @param mailItem the mail item that has arrived at the building
+     */
+    public void addToPool(MailItem mailItem) throws ItemTooHeavyException {
+    	mailPools[chooseMailroom(mailItem)].addToPool(mailItem);
+    }
+
+    private int chooseMailroom(MailItem mailItem) {
+    	if (mailrooms.length == 1) {
+    		return 0;
+    	}
+    	int weight = mailItem.getWeight();
+    	int team = weight <= individualMaxWeight ? 1 : weight <= pairMaxWeight ? 2 : 3;
+    	int best = -1;
+    	int largest = 0;
+    	for (int k = 0; k < mailrooms.length; k++) {
+    		if (mailroomRobots[k] > mailroomRobots[largest]) {
+    			largest = k;
+    		}
+    		if (mailroomRobots[k] >= team && (best == -1 || Math.abs(mailrooms[k] - mailItem.getDestFloor()) < Math
+    				.abs(mailrooms[best] - mailItem.getDestFloor()))) {
+    			best = k;
+    		}
+    	}
+    	// no mailroom has a big enough team, the largest will report the item as too heavy
+    	return best == -1 ? largest : best;
+    }
+
+    /**
+     * Loads waiting robots in every mailroom. A mailroom whose pool has run dry first steals
+     * enough work from its nearest neighbours to fill its waiting robots.
+     */
+    public void step() throws ItemTooHeavyException {
+    	for (int k = 0; k < mailPools.length; k++) {
+    		if (mailPools[k].size() == 0 && mailPools[k].waitingRobots() > 0) {
+    			stealWork(k);
+    		}
+    		mailPools[k].step();
+    	}
+    }
+
+    /**
+     * Moves every robot one time step, in robot order
+     */
+    public void stepRobots() throws ExcessiveDeliveryException, ItemTooHeavyException {
+    	if (fleet != null) {
+    		fleet.step();
+    	} else {
+    		for (int i = 0; i < robots.length; i++)
+    			robots[i].step();
+    	}
+    }
+
+    /**
+     * @return the number of robots in each RobotState, by ordinal
+     */
+    public int[] countStates() {
+    	int[] counts = new int[Robot.RobotState.values().length];
+    	if (fleet != null) {
+    		fleet.countStates(counts);
+    	} else {
+    		for (Robot robot : robots) counts[robot.current_state.ordinal()]++;
+    	}
+    	return counts;
+    }
+
+    private void stealWork(int k) throws ItemTooHeavyException {
+    	IMailPool thief = mailPools[k];
+    	int wanted = 2 * thief.waitingRobots(); // a hand and a tube for each robot
+    	for (int victim : neighbours[k]) {
+    		IMailPool pool = mailPools[victim];
+    		// leave the victim enough for its own waiting robots
+    		while (wanted > 0 && pool.size() > 2 * pool.waitingRobots()) {
+    			MailItem mailItem = pool.steal();
+    			if (mailItem == null) {
+    				break;
+    			}
+    			log.stolen(mailItem, mailrooms[victim], mailrooms[k]);
+    			thief.addToPool(mailItem);
+    			wanted--;
+    		}
+    		if (wanted == 0) {
+    			return;
+    		}
+    	}
+    }
+
+}
@@ -0,0 +1,78 @@
+package strategies;
+
+import java.util.Comparator;
+import java.util.TreeSet;
+
+import automail.Building;
+
+/**
+ * Pooled items by destination floor: a queue per floor in pool order, and a segment tree
+ * over the floors holding the first item bound for each range of floors, so the first item
+ * bound anywhere between two floors is found in O(log F).
+ */
+class FloorIndex<T> {
+
+	private final Comparator<? super T> comparator;
+	private final TreeSet<T>[] floors;
+	/** Node n covers the floors of its children 2n and 2n+1, the leaves start at width */
+	private final Object[] tree;
+	private final int width;
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	FloorIndex(int floorCount, Comparator<? super T> comparator) {
+		this.comparator = comparator;
+		floors = new TreeSet[floorCount];
+		for (int f = 0; f < floorCount; f++) floors[f] = new TreeSet<>(comparator);
+		int w = 1;
+		while (w < floorCount) w *= 2;
+		width = w;
+		tree = new Object[2 * width];
+	}
+
+	void add(T item, int floor) {
+		TreeSet<T> queue = floors[floor - Building.LOWEST_FLOOR];
+		queue.add(item);
+		update(floor, queue);
+	}
+
+	void remove(T item, int floor) {
+		TreeSet<T> queue = floors[floor - Building.LOWEST_FLOOR];
+		if (queue.remove(item)) {
+			update(floor, queue);
+		}
+	}
+
+	/**
+	 * @return the first item, in pool order, bound for a floor from low to high inclusive,
+	 *         or null if there is none
+	 */
+	T first(int low, int high) {
+		T best = null;
+		int l = Math.max(low - Building.LOWEST_FLOOR, 0) + width;
+		int r = Math.min(high - Building.LOWEST_FLOOR, floors.length - 1) + width + 1;
+		for (; l < r; l /= 2, r /= 2) {
+			if ((l & 1) == 1) best = better(best, node(l++));
+			if ((r & 1) == 1) best = better(best, node(--r));
+		}
+		return best;
+	}
+
+	private void update(int floor, TreeSet<T> queue) {
+		int n = floor - Building.LOWEST_FLOOR + width;
+		tree[n] = queue.isEmpty() ? null : queue.first();
+		for (n /= 2; n > 0; n /= 2) {
+			tree[n] = better(node(2 * n), node(2 * n + 1));
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private T node(int n) {
+		return (T) tree[n];
+	}
+
+	private T better(T a, T b) {
+		if (a == null) return b;
+		if (b == null) return a;
+		return comparator.compare(a, b) <= 0 ? a : b;
+	}
+}
@@ -1,40 +1,83 @@
-package strategies;
-
-import java.util.ListIterator;
-
-import automail.MailItem;
-import automail.Robot;
-import exceptions.ItemTooHeavyException;
-
-/**
- * addToPool is called when there are mail items newly arrived at the building to add to the MailPool or
- * if a robot returns with some undelivered items - these are added back to the MailPool.
- * The data structure and algorithms used in the MailPool is your choice.
- * 
- */
-public interface IMailPool {
-	
-	/**
-     * Adds an item to the mail pool
-     * @param mailItem the mail item being added.
-     */
-    void addToPool(MailItem mailItem);
-    
-    /**
-     * load up any waiting robots with mailItems, if any.
-     */
-	void step() throws ItemTooHeavyException;
-
-	/**
-     * @param robot refers to a robot which has arrived back ready for more mailItems to deliver
-     */	
-	void registerWaiting(Robot robot);
-	
-	/**
-	 * 
-	 * @return
-	 * @throws ItemTooHeavyException 
-	 */
-	void groupRobots(int poolID, ListIterator<Robot> i) throws ItemTooHeavyException;
-
-}
+package strategies;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
+import java.util.ListIterator;
+
+import automail.MailItem;
+import automail.Robot;
+import exceptions.ItemTooHeavyException;
+
+/**
+ * addToPool is called when there are mail items newly arrived at the building to add to the MailPool or
+ * if a robot returns with some undelivered items - these are added back to the MailPool.
+ * The data structure and algorithms used in the MailPool is your choice.
+ * 
+ */
+public interface IMailPool {
+	
+	/**
+     * Adds an item to the mail pool
+     * @param mailItem the mail item being added.
+     * @throws ItemTooHeavyException if the item is too heavy for any team of robots
+     */
+    void addToPool(MailItem mailItem) throws ItemTooHeavyException;
+    
+    /**
+     * load up any waiting robots with mailItems, if any.
+     */
+	void step() throws ItemTooHeavyException;
+
+	/**
+     * @param robot refers to a robot which has arrived back ready for more mailItems to deliver
+     */	
+	void registerWaiting(Robot robot);
+
+	/**
+	 * @return how many mail items are waiting in the pool
+	 */
+	int size();
+
+	/**
+	 * @return how many robots are waiting in the mailroom for mail items
+	 */
+	int waitingRobots();
+
+	/**
+	 * Gives away an item for an idle mailroom to deliver, one this pool would have delivered last
+	 * @return an item a single robot can carry, or null if there is none
+	 */
+	MailItem steal();
+
+	/**
+	 * @return the items waiting in the pool, in an order that rebuilds the same pool when
+	 *         they are added back one at a time
+	 */
+	List<MailItem> getItems();
+
+	/**
+	 * @return the robots waiting in the mailroom, in the order they registered
+	 */
+	List<Robot> getWaitingRobots();
+
+	/**
+	 * Saves whatever the pool has learned beyond its items, for a snapshot
+	 */
+	void writeState(DataOutput out) throws IOException;
+
+	/**
+	 * Restores the state saved by {@link #writeState} in a pool of the same kind, once its
+	 * items have been added back
+	 */
+	void readState(DataInput in) throws IOException;
+	
+	/**
+	 * 
+	 * @return
+	 * @throws ItemTooHeavyException 
+	 */
+	void groupRobots(int poolID, ListIterator<Robot> i) throws ItemTooHeavyException;
+
+}
@@ -1,221 +1,355 @@
-package strategies;
-
-import java.util.LinkedList;
-import java.util.Comparator;
-import java.util.Iterator;
-import java.util.ListIterator;
-import java.util.WeakHashMap;
-
-import automail.MailItem;
-import automail.PriorityMailItem;
-import automail.Robot;
-import exceptions.ItemTooHeavyException;
-
-public class MailPool implements IMailPool {
-
-	private class Item {
-		int priority;
-		int destination;
-		MailItem mailItem;
-		// Use stable sort to keep arrival time relative positions
-
-		public Item(MailItem mailItem) {
-			priority = (mailItem instanceof PriorityMailItem) ? ((PriorityMailItem) mailItem).getPriorityLevel() : 1;
-			destination = mailItem.getDestFloor();
-			this.mailItem = mailItem;
-		}
-	}
-
-	public class ItemComparator implements Comparator<Item> {
-		@Override
-		public int compare(Item i1, Item i2) {
-			int order = 0;
-			if (i1.priority < i2.priority) {
-				order = 1;
-			} else if (i1.priority > i2.priority) {
-				order = -1;
-			} else if (i1.destination < i2.destination) {
-				order = 1;
-			} else if (i1.destination > i2.destination) {
-				order = -1;
-			}
-			return order;
-		}
-	}
-
-	private LinkedList<Item> pool;
-	private LinkedList<Item> pairPool;
-	private LinkedList<Item> triplePool;
-	private LinkedList<Robot> robots;
-	private int nrobots;
-
-	public MailPool(int nrobots) {
-		// Start empty
-		pool = new LinkedList<Item>();
-		pairPool = new LinkedList<Item>();
-		triplePool = new LinkedList<Item>();
-		robots = new LinkedList<Robot>();
-		this.nrobots = nrobots;
-	}
-
-	public void addToPool(MailItem mailItem) {
-		// put item into different pool based on its weight, sort the pool in
-		// the same time
-		Item item = new Item(mailItem);
-		int weight = mailItem.getWeight();
-
-		if (weight <= 2000) {
-			pool.add(item);
-			pool.sort(new ItemComparator());
-		} else if (weight > 2000 && weight <= 2600) {
-			pairPool.add(item);
-			pairPool.sort(new ItemComparator());
-		} else if (weight > 2600 && weight <= 3000) {
-			triplePool.add(item);
-			triplePool.sort(new ItemComparator());
-		}
-	}
-
-	@Override
-	public void step() throws ItemTooHeavyException {
-		try {
-			ListIterator<Robot> i = robots.listIterator();
-			while (i.hasNext()) {
-				loadRobot(i);
-			}
-		} catch (Exception e) {
-			throw e;
-		}
-	}
-
-	private void loadRobot(ListIterator<Robot> i) throws ItemTooHeavyException {
-
-		/**
-		 * choose which pool to use, the number that returned also indicates the
-		 * numbers of robot that the item need
-		 */
-		int poolID = choosePool();
-
-		if (poolID == 1) {
-			Robot robot = i.next();
-			assert (robot.isEmpty());
-			ListIterator<Item> poolIterator = pool.listIterator();
-			if (pool.size() > 0) {
-				try {
-					// hand first as we want higher priority delivered first
-					robot.setTeamState(false);
-					robot.setNumOfTeam(poolID); 
-					robot.addToHand(poolIterator.next().mailItem);
-					poolIterator.remove();
-					if (pool.size() > 0) {
-						robot.addToTube(poolIterator.next().mailItem);
-						poolIterator.remove();
-					}
-					// send the robot off if it has any items to deliver
-					robot.dispatch();
-					i.remove(); // remove from mailPool queue
-				} catch (Exception e) {
-					throw e;
-				}
-			} 
-		}else {
-			groupRobots(poolID, i);
-		}
-	}
-
-	/**
-	 * compare the Item in the three pools, return which pool has the highest
-	 * priority (i.e) which pool need to deliver its item first
-	 * 
-	 * @return a num indicate the pool(1)/pairPool(2)/triplePool(3), the number
-	 *         also indicates how many robots this item requires
-	 */
-	private int choosePool() {
-		LinkedList<Item> items = new LinkedList<>();
-
-		// if the pool is not empty, retrive the items and put them it a list
-		if (pool.size() > 0) {
-			Item poolItem = pool.element();
-			items.add(poolItem);
-		}
-		if (pairPool.size() > 0) {
-			Item pairItem = pairPool.element();
-			items.add(pairItem);
-		}
-		if (triplePool.size() > 0) {
-			Item tripleItem = triplePool.element();
-			items.add(tripleItem);
-		}
-
-		// sort the List
-		items.sort(new ItemComparator());
-
-		if (items.size() > 0) {
-			int weitht = items.getFirst().mailItem.getWeight();
-			if (weitht <= 2000) {
-				return 1; // use pool
-			} else if (weitht > 2000 && weitht <= 2600) {
-				return 2; // use pairPool
-			} else if (weitht > 2600 && weitht <= 3000) {
-				return 3; // use triplePool
-			}
-		}
-		return 1; // nothing need to be delivered, all the pools are empty
-	}
-
-	@Override
-	public void registerWaiting(Robot robot) { // assumes won't be there already
-		robots.add(robot);
-	}
-
-	/**
-	 * called when robots going to work in groups, either in a group of 2 or a
-	 * group of 3
-	 * 
-	 * @param poolID
-	 *            : a number that indicates how many robots are required for
-	 *            this item
-	 * @param thePool
-	 *            : which pool to use
-	 * @param i
-	 *            : the iterator of the linkedList<Robot>
-	 * @throws ItemTooHeavyException
-	 */
-	public void groupRobots(int poolID, ListIterator<Robot> i) throws ItemTooHeavyException {
-		LinkedList<Item> thePool = new LinkedList<>();
-		// compare poolID with nRobots here
-		if (poolID > this.nrobots) {
-			throw new ItemTooHeavyException();
-		}
-
-		if (poolID == 2) {
-			thePool = pairPool;
-		} else if (poolID == 3){
-			thePool = triplePool;
-		}
-
-		/// if we have enough robots, processing loading procedure
-		if (robots.size() >= poolID && thePool.size() > 0) {
-			ListIterator<Item> iterator = thePool.listIterator();
-			MailItem item = iterator.next().mailItem;
-			iterator.remove();
-			// get robots concerning to the item's weight
-			for (int k = 0; k < poolID; k++) {
-				try {
-					Robot robot = i.next();
-					assert (robot.isEmpty());
-					robot.setTeamState(true);// the robot working in team now
-					robot.setNumOfTeam(poolID);  // how many robots in the team
-					robot.addToHand(item);
-					robot.dispatch();
-					i.remove();
-				} catch (Exception e) {
-					throw e;
-				}
-			}
-		} else { // wait for more robots coming
-			Robot robot = i.next();
-			assert (robot.isEmpty());
-		}
-	}
-}
+package strategies;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Comparator;
+import java.util.ListIterator;
+import java.util.TreeSet;
+
+import automail.Building;
+import automail.MailItem;
+import automail.PriorityMailItem;
+import automail.Robot;
+import exceptions.ItemTooHeavyException;
+
+public class MailPool implements IMailPool {
+
+	private class Item {
+		int priority;
+		int destination;
+		MailItem mailItem;
+		// Keep arrival time relative positions among equal items, as a stable sort would
+		long sequence;
+
+		public Item(MailItem mailItem) {
+			priority = (mailItem instanceof PriorityMailItem) ? ((PriorityMailItem) mailItem).getPriorityLevel() : 1;
+			destination = mailItem.getDestFloor();
+			this.mailItem = mailItem;
+			sequence = nextSequence++;
+		}
+	}
+
+	public class ItemComparator implements Comparator<Item> {
+		@Override
+		public int compare(Item i1, Item i2) {
+			switch (order) {
+			case PRIORITY_LOWEST_FLOOR:
+				return i1.priority != i2.priority ? Integer.compare(i2.priority, i1.priority)
+						: Integer.compare(i1.destination, i2.destination);
+			case PRIORITY_ARRIVAL:
+				return i1.priority != i2.priority ? Integer.compare(i2.priority, i1.priority)
+						: Integer.compare(i1.mailItem.getArrivalTime(), i2.mailItem.getArrivalTime());
+			case HIGHEST_FLOOR:
+				return Integer.compare(i2.destination, i1.destination);
+			case ARRIVAL:
+				return Integer.compare(i1.mailItem.getArrivalTime(), i2.mailItem.getArrivalTime());
+			default:
+				break;
+			}
+			int order = 0;
+			if (i1.priority < i2.priority) {
+				order = 1;
+			} else if (i1.priority > i2.priority) {
+				order = -1;
+			} else if (i1.destination < i2.destination) {
+				order = 1;
+			} else if (i1.destination > i2.destination) {
+				order = -1;
+			}
+			return order;
+		}
+	}
+
+	private TreeSet<Item> pool;
+	private TreeSet<Item> pairPool;
+	private TreeSet<Item> triplePool;
+	private LinkedList<Robot> robots;
+	private int nrobots;
+	private long nextSequence = 0;
+
+	/** The single robot items by destination, null unless loading is route aware */
+	private final FloorIndex<Item> floorIndex;
+	private final int mailroom;
+
+	/** The heaviest items delivered by one, two and three robots */
+	private final int individualMaxWeight;
+	private final int pairMaxWeight;
+	private final int tripleMaxWeight;
+	private final PoolOrder order;
+
+	public MailPool(int nrobots) {
+		this(nrobots, Robot.INDIVIDUAL_MAX_WEIGHT, Robot.PAIR_MAX_WEIGHT, Robot.TRIPLE_MAX_WEIGHT,
+				PoolOrder.PRIORITY_HIGHEST_FLOOR);
+	}
+
+	public MailPool(int nrobots, int individualMaxWeight, int pairMaxWeight, int tripleMaxWeight,
+			PoolOrder order) {
+		this(nrobots, individualMaxWeight, pairMaxWeight, tripleMaxWeight, order, 0, Building.MAILROOM_LOCATION);
+	}
+
+	/**
+	 * @param nrobots
+	 *            the number of robots working from this pool
+	 * @param individualMaxWeight
+	 *            items up to this weight are delivered by one robot
+	 * @param pairMaxWeight
+	 *            items up to this weight are delivered by a pair
+	 * @param tripleMaxWeight
+	 *            items up to this weight are delivered by three robots
+	 * @param order
+	 *            the order items are delivered in
+	 * @param floors
+	 *            the floors in the building for route aware loading, which fills a robot's
+	 *            tube with the first item bound for a floor it passes on the way to its
+	 *            hand item; 0 to always load the next item
+	 * @param mailroom
+	 *            the floor of this pool's mailroom
+	 */
+	public MailPool(int nrobots, int individualMaxWeight, int pairMaxWeight, int tripleMaxWeight,
+			PoolOrder order, int floors, int mailroom) {
+		if (individualMaxWeight > Robot.INDIVIDUAL_MAX_WEIGHT || pairMaxWeight > Robot.PAIR_MAX_WEIGHT
+				|| tripleMaxWeight > Robot.TRIPLE_MAX_WEIGHT || individualMaxWeight > pairMaxWeight
+				|| pairMaxWeight > tripleMaxWeight) {
+			throw new IllegalArgumentException("Weight classes must increase and stay within what robots can carry");
+		}
+		// Start empty
+		Comparator<Item> inOrder = new ItemComparator().thenComparingLong(item -> item.sequence);
+		pool = new TreeSet<Item>(inOrder);
+		pairPool = new TreeSet<Item>(inOrder);
+		triplePool = new TreeSet<Item>(inOrder);
+		floorIndex = floors > 0 ? new FloorIndex<Item>(floors, inOrder) : null;
+		this.mailroom = mailroom;
+		robots = new LinkedList<Robot>();
+		this.nrobots = nrobots;
+		this.individualMaxWeight = individualMaxWeight;
+		this.pairMaxWeight = pairMaxWeight;
+		this.tripleMaxWeight = tripleMaxWeight;
+		this.order = order;
+	}
+
+	public void addToPool(MailItem mailItem) throws ItemTooHeavyException {
+		// put item into different pool based on its weight, the pools keep
+		// themselves sorted
+		Item item = new Item(mailItem);
+		int weight = mailItem.getWeight();
+
+		if (weight <= individualMaxWeight) {
+			pool.add(item);
+			if (floorIndex != null) {
+				floorIndex.add(item, item.destination);
+			}
+		} else if (weight > individualMaxWeight && weight <= pairMaxWeight) {
+			pairPool.add(item);
+		} else if (weight > pairMaxWeight && weight <= tripleMaxWeight) {
+			triplePool.add(item);
+		} else {
+			throw new ItemTooHeavyException();
+		}
+	}
+
+	@Override
+	public void step() throws ItemTooHeavyException {
+		try {
+			ListIterator<Robot> i = robots.listIterator();
+			while (i.hasNext()) {
+				loadRobot(i);
+			}
+		} catch (Exception e) {
+			throw e;
+		}
+	}
+
+	private void loadRobot(ListIterator<Robot> i) throws ItemTooHeavyException {
+
+		/**
+		 * choose which pool to use, the number that returned also indicates the
+		 * numbers of robot that the item need
+		 */
+		int poolID = choosePool();
+
+		if (poolID == 1) {
+			Robot robot = i.next();
+			assert (robot.isEmpty());
+			if (pool.size() > 0) {
+				try {
+					// hand first as we want higher priority delivered first
+					robot.setTeamState(false);
+					robot.setNumOfTeam(poolID); 
+					Item hand = pool.first();
+					removeItem(hand);
+					robot.addToHand(hand.mailItem);
+					if (pool.size() > 0) {
+						Item tube = floorIndex == null ? null
+								: floorIndex.first(Math.min(mailroom, hand.destination),
+										Math.max(mailroom, hand.destination));
+						if (tube == null) {
+							tube = pool.first();
+						}
+						removeItem(tube);
+						robot.addToTube(tube.mailItem);
+					}
+					// send the robot off if it has any items to deliver
+					robot.dispatch();
+					i.remove(); // remove from mailPool queue
+				} catch (Exception e) {
+					throw e;
+				}
+			} 
+		}else {
+			groupRobots(poolID, i);
+		}
+	}
+
+	/**
+	 * Takes a single robot item out of the pool and the floor index
+	 */
+	private void removeItem(Item item) {
+		pool.remove(item);
+		if (floorIndex != null) {
+			floorIndex.remove(item, item.destination);
+		}
+	}
+
+	/**
+	 * compare the Item in the three pools, return which pool has the highest
+	 * priority (i.e) which pool need to deliver its item first
+	 * 
+	 * @return a num indicate the pool(1)/pairPool(2)/triplePool(3), the number
+	 *         also indicates how many robots this item requires
+	 */
+	private int choosePool() {
+		LinkedList<Item> items = new LinkedList<>();
+
+		// if the pool is not empty, retrive the items and put them it a list
+		if (pool.size() > 0) {
+			Item poolItem = pool.first();
+			items.add(poolItem);
+		}
+		if (pairPool.size() > 0) {
+			Item pairItem = pairPool.first();
+			items.add(pairItem);
+		}
+		if (triplePool.size() > 0) {
+			Item tripleItem = triplePool.first();
+			items.add(tripleItem);
+		}
+
+		// sort the List
+		items.sort(new ItemComparator());
+
+		if (items.size() > 0) {
+			int weitht = items.getFirst().mailItem.getWeight();
+			if (weitht <= individualMaxWeight) {
+				return 1; // use pool
+			} else if (weitht > individualMaxWeight && weitht <= pairMaxWeight) {
+				return 2; // use pairPool
+			} else if (weitht > pairMaxWeight && weitht <= tripleMaxWeight) {
+				return 3; // use triplePool
+			}
+		}
+		return 1; // nothing need to be delivered, all the pools are empty
+	}
+
+	@Override
+	public void registerWaiting(Robot robot) { // assumes won't be there already
+		robots.add(robot);
+	}
+
+	@Override
+	public int size() {
+		return pool.size() + pairPool.size() + triplePool.size();
+	}
+
+	@Override
+	public int waitingRobots() {
+		return robots.size();
+	}
+
+	@Override
+	public MailItem steal() {
+		// only single robot items, a team could not be gathered in the other mailroom
+		if (pool.isEmpty()) {
+			return null;
+		}
+		Item item = pool.last();
+		removeItem(item);
+		return item.mailItem;
+	}
+
+	@Override
+	public List<MailItem> getItems() {
+		List<MailItem> items = new ArrayList<>(size());
+		for (Item item : pool) items.add(item.mailItem);
+		for (Item item : pairPool) items.add(item.mailItem);
+		for (Item item : triplePool) items.add(item.mailItem);
+		return items;
+	}
+
+	@Override
+	public List<Robot> getWaitingRobots() {
+		return new ArrayList<>(robots);
+	}
+
+	/**
+	 * Nothing to save: the pool is rebuilt from its items
+	 */
+	@Override
+	public void writeState(DataOutput out) {
+	}
+
+	@Override
+	public void readState(DataInput in) {
+	}
+
+	/**
+	 * called when robots going to work in groups, either in a group of 2 or a
+	 * group of 3
+	 * 
+	 * @param poolID
+	 *            : a number that indicates how many robots are required for
+	 *            this item
+	 * @param thePool
+	 *            : which pool to use
+	 * @param i
+	 *            : the iterator of the linkedList<Robot>
+	 * @throws ItemTooHeavyException
+	 */
+	public void groupRobots(int poolID, ListIterator<Robot> i) throws ItemTooHeavyException {
+		TreeSet<Item> thePool = pairPool;
+		// compare poolID with nRobots here
+		if (poolID > this.nrobots) {
+			throw new ItemTooHeavyException();
+		}
+
+		if (poolID == 2) {
+			thePool = pairPool;
+		} else if (poolID == 3){
+			thePool = triplePool;
+		}
+
+		/// if we have enough robots, processing loading procedure
+		if (robots.size() >= poolID && thePool.size() > 0) {
+			MailItem item = thePool.pollFirst().mailItem;
+			// get robots concerning to the item's weight
+			for (int k = 0; k < poolID; k++) {
+				try {
+					Robot robot = i.next();
+					assert (robot.isEmpty());
+					robot.setTeamState(true);// the robot working in team now
+					robot.setNumOfTeam(poolID);  // how many robots in the team
+					robot.addToHand(item);
+					robot.dispatch();
+					i.remove();
+				} catch (Exception e) {
+					throw e;
+				}
+			}
+		} else { // wait for more robots coming
+			Robot robot = i.next();
+			assert (robot.isEmpty());
+		}
+	}
+}
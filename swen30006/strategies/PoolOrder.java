@@ -0,0 +1,18 @@
+package strategies;
+
+/**
+ * The order in which a MailPool hands out its items. Items the order cannot tell apart
+ * keep the order they were added to the pool in.
+ */
+public enum PoolOrder {
+	/** Highest priority first, then the highest floor */
+	PRIORITY_HIGHEST_FLOOR,
+	/** Highest priority first, then the lowest floor */
+	PRIORITY_LOWEST_FLOOR,
+	/** Highest priority first, then the item that arrived first */
+	PRIORITY_ARRIVAL,
+	/** The highest floor first, whatever the priority */
+	HIGHEST_FLOOR,
+	/** The item that arrived first, whatever the priority */
+	ARRIVAL
+}